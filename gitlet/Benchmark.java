@@ -0,0 +1,476 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Benchmarks of the gitlet object store and history code.
+ *  Usage: java gitlet.Benchmark [NAME ...], run from an empty scratch
+ *  directory. Each benchmark builds a repository there through Main and
+ *  removes it again when it is done.
+ *  @author Henry Xu
+ */
+public class Benchmark {
+
+    /** number of files in generated trees.*/
+    private static final int FILES = 200;
+    /** number of words in each generated file.*/
+    private static final int WORDS = 1500;
+    /** number of timed rounds.*/
+    private static final int ROUNDS = 10;
+    /** words used to generate text files.*/
+    private static final String[] VOCABULARY = {
+        "commit", "branch", "merge", "blob", "tree", "head", "stage",
+        "index", "value", "true", "false", "name", "path", "=", "{", "}",
+        "\n", "\n", "  ", "# config",
+    };
+
+    /** files generated by the running benchmark.*/
+    private static ArrayList<String> _generated = new ArrayList<>();
+
+    /** run the benchmarks named in ARGS, or all of them.
+     * @param args names of benchmarks.*/
+    public static void main(String... args) {
+        List<String> existing = Utils.plainFilenamesIn("./");
+        if (new File(".gitlet").exists() || !existing.isEmpty()) {
+            System.out.println("Run the benchmarks from an empty directory.");
+            return;
+        }
+        if (args.length == 0) {
+            args = new String[] {"compression", "mergebase", "zerocopy",
+                "commitformat", "sha1", "trees", "walk"};
+        }
+        for (String name : args) {
+            switch (name) {
+            case "compression":
+                compression(); break;
+            case "mergebase":
+                mergeBase(); break;
+            case "zerocopy":
+                zeroCopy(); break;
+            case "commitformat":
+                commitFormat(); break;
+            case "sha1":
+                sha1(); break;
+            case "trees":
+                trees(); break;
+            case "walk":
+                walk(); break;
+            default:
+                System.out.println("No benchmark with that name exists.");
+                break;
+            }
+        }
+    }
+
+    /** compare repository size and branch checkout time with compression
+     *  of objects off and on.*/
+    static void compression() {
+        System.out.println("=== compression ===");
+        for (boolean compress : new boolean[] {false, true}) {
+            ObjectStore.setCompression(compress);
+            Main.main("init");
+            writeTree(1);
+            commitAll("base");
+            Main.main("branch", "other");
+            writeTree(2);
+            commitAll("changed");
+            long size = sizeOf(Paths.get(Gitlet.GITLET_DIR));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                Main.main("checkout", "other");
+                Main.main("checkout", "master");
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / (2 * ROUNDS);
+            report(compress ? "deflate" : "raw",
+                    String.format("%10d bytes %8.2f ms/checkout", size, ms));
+            clean();
+        }
+        ObjectStore.setCompression(true);
+    }
+
+    /** compare writing a large binary blob into the working directory
+     *  through the heap and with a copy by the file system, with the blob
+     *  loose and then packed. objects are stored uncompressed.*/
+    static void zeroCopy() {
+        System.out.println("=== zerocopy ===");
+        final int size = 64 << 20;
+        ObjectStore.setCompression(false);
+        Main.main("init");
+        byte[] asset = new byte[size];
+        new Random(5).nextBytes(asset);
+        File file = new File("asset.bin");
+        Utils.writeContents(file, asset);
+        _generated.add(file.getName());
+        String sha = Utils.sha1(asset);
+        asset = null;
+        Main.main("add", file.getName());
+        Main.main("commit", "asset");
+        for (String where : new String[] {"loose", "packed"}) {
+            if (where.equals("packed")) {
+                Main.main("repack");
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                Utils.writeContents(file, ObjectStore.readBlob(sha));
+            }
+            double heap = (System.nanoTime() - start) / 1e6 / ROUNDS;
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                ObjectStore.writeBlobTo(sha, file);
+            }
+            double direct = (System.nanoTime() - start) / 1e6 / ROUNDS;
+            report(where, String.format("%8.2f ms heap %8.2f ms zero-copy"
+                    + " (%d MiB)", heap, direct, size >> 20));
+        }
+        if (!sha.equals(Utils.sha1(file))) {
+            System.out.println("Checked out asset is wrong.");
+        }
+        clean();
+        ObjectStore.setCompression(true);
+    }
+
+    /** compare the size and decode time of a commit of FILES files in the
+     *  binary encoding, with its root tree, and Java serialized.*/
+    static void commitFormat() {
+        System.out.println("=== commitformat ===");
+        final int decodes = 20000;
+        HashMap<String, String> blobs = new HashMap<>();
+        for (int i = 0; i < FILES; i++) {
+            blobs.put("file" + i + ".txt", Utils.sha1("blob " + i));
+        }
+        Commit commit = new Commit("a commit of many files", new Date(),
+                Utils.sha1("parent"), blobs);
+        byte[] serialized = Utils.serialize(commit);
+        byte[] encoded = commit.encode();
+        byte[] tree = commit.tree().encode();
+        String treeSHA = commit.tree().sha();
+        int files = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < decodes; i++) {
+            files += Utils.deserialize(serialized, Commit.class)
+                    .getBlobs().size();
+        }
+        double us = (System.nanoTime() - start) / 1e3 / decodes;
+        report("serialized", String.format("%6d bytes %8.2f us/decode",
+                serialized.length, us));
+        start = System.nanoTime();
+        for (int i = 0; i < decodes; i++) {
+            Commit.decode(encoded);
+            HashMap<String, String> read = new HashMap<>();
+            Tree.decode(tree, treeSHA).flatten("", read);
+            files += read.size();
+        }
+        us = (System.nanoTime() - start) / 1e3 / decodes;
+        report("encoded", String.format("%6d bytes %8.2f us/decode",
+                encoded.length + tree.length, us));
+        if (files != 2 * decodes * FILES) {
+            System.out.println("Decoded commits are wrong.");
+        }
+    }
+
+    /** time making the root tree of a commit that changes one file of a
+     *  large nested tree from its parent's tree, against building it from
+     *  all files as every commit once had to.*/
+    static void trees() {
+        System.out.println("=== trees ===");
+        final int dirs = 100;
+        final int perDir = 1000;
+        HashMap<String, String> blobs = new HashMap<>();
+        for (int d = 0; d < dirs; d++) {
+            for (int f = 0; f < perDir; f++) {
+                blobs.put("dir" + d + "/file" + f + ".txt",
+                        Utils.sha1("blob " + d + " " + f));
+            }
+        }
+        Tree parent = Tree.build(blobs);
+        HashMap<String, String> change = new HashMap<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            change.put("dir" + i + "/file0.txt", Utils.sha1("new " + i));
+            blobs.putAll(change);
+            Tree.build(blobs);
+        }
+        double full = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        start = System.nanoTime();
+        Tree tree = parent;
+        for (int i = 0; i < ROUNDS; i++) {
+            change.clear();
+            change.put("dir" + i + "/file0.txt", Utils.sha1("new " + i));
+            tree = tree.with(change);
+        }
+        double shared = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        report("all files", String.format("%8.2f ms/commit (%d files)",
+                full, dirs * perDir));
+        report("changed", String.format("%8.2f ms/commit", shared));
+        if (!tree.sha().equals(Tree.build(blobs).sha())) {
+            System.out.println("Trees are wrong.");
+        }
+    }
+
+    /** compare listing a working directory whose dependencies are in an
+     *  ignored directory on one thread and on Stage.THREADS threads, and
+     *  listing everything in it. each is run once untimed to warm up.*/
+    static void walk() {
+        System.out.println("=== walk ===");
+        final int dirs = 100;
+        final int perDir = 200;
+        generateFiles("src", dirs, perDir);
+        generateFiles("node_modules", 4 * dirs, perDir);
+        List<String> patterns = Arrays.asList("node_modules/", "*.log");
+        String[] labels = {"one thread", "threads", "no ignores"};
+        WorkingTree[] walkers = {new WorkingTree(patterns, false),
+            new WorkingTree(patterns, true),
+            new WorkingTree(Collections.emptyList(), true)};
+        for (int round = 0; round < 2; round++) {
+            for (int w = 0; w < walkers.length; w++) {
+                long start = System.nanoTime();
+                int files = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    files = walkers[w].walk("").size();
+                }
+                double ms = (System.nanoTime() - start) / 1e6 / ROUNDS;
+                if (round == 1) {
+                    report(labels[w], String.format("%8.2f ms (%d files)",
+                            ms, files));
+                }
+            }
+        }
+        deleteTree(Paths.get("src"));
+        deleteTree(Paths.get("node_modules"));
+    }
+
+    /** make empty files in two levels of directories.
+     * @param root the directory to make them in.
+     * @param dirs number of directories, each with a subdirectory.
+     * @param perDir number of files in each subdirectory.*/
+    private static void generateFiles(String root, int dirs, int perDir) {
+        try {
+            for (int d = 0; d < dirs; d++) {
+                Path dir = Paths.get(root, "dir" + d, "lib");
+                Files.createDirectories(dir);
+                for (int f = 0; f < perDir; f++) {
+                    Files.createFile(dir.resolve("file" + f + ".js"));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** compare hashing small objects with a new digest and a Formatter
+     *  for every hash, as Utils.sha1 once did, against Utils.sha1 and
+     *  Utils.sha1Id. each is run once untimed to warm up.*/
+    static void sha1() {
+        System.out.println("=== sha1 ===");
+        final int hashes = 200000;
+        byte[] data = new byte[256];
+        new Random(7).nextBytes(data);
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < hashes; i++) {
+                formatterSha1(data);
+            }
+            double old = (System.nanoTime() - start) / 1e3 / hashes;
+            start = System.nanoTime();
+            for (int i = 0; i < hashes; i++) {
+                Utils.sha1(data);
+            }
+            double hex = (System.nanoTime() - start) / 1e3 / hashes;
+            start = System.nanoTime();
+            for (int i = 0; i < hashes; i++) {
+                Utils.sha1Id(data);
+            }
+            double raw = (System.nanoTime() - start) / 1e3 / hashes;
+            if (round == 1) {
+                report("formatter", String.format("%8.3f us/hash", old));
+                report("sha1", String.format("%8.3f us/hash", hex));
+                report("sha1Id", String.format("%8.3f us/hash", raw));
+            }
+        }
+        if (!formatterSha1(data).equals(Utils.sha1(data))) {
+            System.out.println("Hashes are wrong.");
+        }
+    }
+
+    /** @param data bytes to hash.
+     * @return their SHA-1 as hexadecimal, with a new digest and a
+     *  Formatter.*/
+    private static String formatterSha1(byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(data);
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** time merge bases of two long lines of history that are merged into
+     *  each other every few commits, against marking every ancestor of
+     *  one side and searching the ancestors of the other.*/
+    static void mergeBase() {
+        System.out.println("=== mergebase ===");
+        final int commits = 50000;
+        final int mergeEvery = 10;
+        CommitGraph graph = new CommitGraph();
+        Random random = new Random(3);
+        byte[] id = new byte[PackFile.ID_LENGTH];
+        random.nextBytes(id);
+        int root = graph.insert(id.clone(), -1, -1, 0);
+        int a = root;
+        int b = root;
+        for (int i = 1; i < commits; i++) {
+            random.nextBytes(id);
+            if (i % 2 == 0) {
+                a = graph.insert(id.clone(), a,
+                        i % (2 * mergeEvery) == 0 ? b : -1, i);
+            } else {
+                b = graph.insert(id.clone(), b,
+                        i % (2 * mergeEvery) == 1 ? a : -1, i);
+            }
+        }
+        long start = System.nanoTime();
+        int base = -1;
+        for (int i = 0; i < ROUNDS; i++) {
+            base = MergeBase.best(graph, a, b);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        report("paint walk", String.format("%8.3f ms/query (%d commits)",
+                ms, commits));
+
+        start = System.nanoTime();
+        int naive = -1;
+        for (int i = 0; i < ROUNDS; i++) {
+            naive = naiveMergeBase(graph, a, b);
+        }
+        ms = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        report("full marking", String.format("%8.3f ms/query (%s)", ms,
+                graph.generation(naive) == graph.generation(base)
+                ? "same generation" : "DIFFERENT"));
+    }
+
+    /** @param graph a commit graph.
+     * @param a position of a commit.
+     * @param b position of another commit.
+     * @return the common ancestor with the highest generation, found by
+     *  marking every ancestor of A and then of B.*/
+    private static int naiveMergeBase(CommitGraph graph, int a, int b) {
+        boolean[] fromA = new boolean[graph.size()];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(a);
+        while (!work.isEmpty()) {
+            int c = work.pop();
+            if (c < 0 || fromA[c]) {
+                continue;
+            }
+            fromA[c] = true;
+            work.push(graph.parent1(c));
+            work.push(graph.parent2(c));
+        }
+        boolean[] fromB = new boolean[graph.size()];
+        int best = -1;
+        work.push(b);
+        while (!work.isEmpty()) {
+            int c = work.pop();
+            if (c < 0 || fromB[c]) {
+                continue;
+            }
+            fromB[c] = true;
+            if (fromA[c] && (best < 0
+                    || graph.generation(c) > graph.generation(best))) {
+                best = c;
+            }
+            work.push(graph.parent1(c));
+            work.push(graph.parent2(c));
+        }
+        return best;
+    }
+
+    /** write FILES text files into the working directory.
+     * @param seed seed of their contents.*/
+    static void writeTree(long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < FILES; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < WORDS; w++) {
+                text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+                text.append(' ');
+            }
+            String name = "file" + i + ".txt";
+            Utils.writeContents(new File(name), text.toString());
+            if (!_generated.contains(name)) {
+                _generated.add(name);
+            }
+        }
+    }
+
+    /** add every generated file and commit them.
+     * @param message the commit message.*/
+    static void commitAll(String message) {
+        for (String name : _generated) {
+            Main.main("add", name);
+        }
+        Main.main("commit", message);
+    }
+
+    /** print one result line.
+     * @param label what was measured.
+     * @param result the measurement.*/
+    static void report(String label, String result) {
+        System.out.println(String.format("%-12s %s", label, result));
+    }
+
+    /** @param root a file or directory.
+     * @return total size in bytes of all files under ROOT.*/
+    static long sizeOf(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** remove the repository and all generated files.*/
+    static void clean() {
+        deleteTree(Paths.get(Gitlet.GITLET_DIR));
+        for (String name : _generated) {
+            new File(name).delete();
+        }
+        _generated.clear();
+        CommitGraph.reset();
+        MessageIndex.reset();
+        ObjectStore.reset();
+    }
+
+    /** @param root a directory to delete with everything in it.*/
+    static void deleteTree(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/** Writes many blobs into the working directory at once.
+ *  Reading and inflating blobs runs on one pool of threads and writing
+ *  files on another, so the two overlap. A blob waits for its share of
+ *  gitlet.checkoutBytes (64 MiB by default), by the length in its header,
+ *  before it is read, and holds it until it is written, which bounds the
+ *  bytes held in memory by both stages. Blobs that ObjectStore can copy
+ *  without reading them into memory are written by the reader that finds
+ *  them instead. A file that cannot be written does not stop the others.
+ *  Directories that files are written into are made as needed.
+ *  Both pools have Stage.THREADS threads.
+ *  @author Henry Xu
+ */
+class CheckoutWriter {
+
+    /** most bytes of blobs read but not yet written.*/
+    static final int MAX_IN_FLIGHT = (int) Math.min(Integer.MAX_VALUE,
+            Long.getLong("gitlet.checkoutBytes", 64L << 20));
+    /** fewest files written in parallel.*/
+    private static final int MIN_PARALLEL = 16;
+
+    /** errors so far. key: file name, val: the error.*/
+    private TreeMap<String, String> _errors = new TreeMap<>();
+
+    /** write files.
+     * @param fileNames the names of the files.
+     * @param blobs key: file name, val: SHA of the blob to write there.
+     * @return the files that could not be written, in order of name.
+     *  key: file name, val: the error.*/
+    static TreeMap<String, String> write(List<String> fileNames,
+                                         Map<String, String> blobs) {
+        CheckoutWriter writer = new CheckoutWriter();
+        if (Stage.THREADS <= 1 || fileNames.size() < MIN_PARALLEL) {
+            for (String fileName : fileNames) {
+                try {
+                    ObjectStore.writeBlobTo(blobs.get(fileName),
+                            WorkingTree.file(fileName));
+                } catch (RuntimeException excp) {
+                    writer.fail(fileName, excp);
+                }
+            }
+        } else {
+            writer.writeParallel(fileNames, blobs);
+        }
+        return writer._errors;
+    }
+
+    /** write files on two pools of threads.
+     * @param fileNames the names of the files.
+     * @param blobs key: file name, val: SHA of the blob to write there.*/
+    private void writeParallel(List<String> fileNames,
+                               Map<String, String> blobs) {
+        ExecutorService readers = Executors.newFixedThreadPool(Stage.THREADS);
+        ExecutorService writers = Executors.newFixedThreadPool(Stage.THREADS);
+        Semaphore budget = new Semaphore(MAX_IN_FLIGHT);
+        for (String fileName : fileNames) {
+            readers.execute(() -> {
+                byte[] contents;
+                try {
+                    contents = ObjectStore.copyBlob(blobs.get(fileName),
+                            WorkingTree.file(fileName), budget);
+                } catch (RuntimeException excp) {
+                    fail(fileName, excp);
+                    return;
+                }
+                if (contents == null) {
+                    return;
+                }
+                int permits = Math.min(contents.length, MAX_IN_FLIGHT);
+                writers.execute(() -> {
+                    try {
+                        Utils.writeContents(new File(fileName), contents);
+                    } catch (RuntimeException excp) {
+                        fail(fileName, excp);
+                    } finally {
+                        budget.release(permits);
+                    }
+                });
+            });
+        }
+        await(readers);
+        await(writers);
+    }
+
+    /** @param pool a pool to shut down once all its tasks are done.*/
+    private static void await(ExecutorService pool) {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                continue;
+            }
+        } catch (InterruptedException excp) {
+            pool.shutdownNow();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** record an error.
+     * @param fileName the file that could not be written.
+     * @param excp why.*/
+    private synchronized void fail(String fileName, RuntimeException excp) {
+        _errors.put(fileName, excp.getMessage());
+    }
+}
@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** A thin client of the Daemon of the repository in the current
+ *  directory. It sends the command it is given to the daemon and copies
+ *  what the command prints to its own standard output and error. If no
+ *  daemon is running, the command is run by Main instead.
+ *  Usage: java gitlet.Client ARGS, where ARGS are as for gitlet.Main.
+ *  @author Henry Xu
+ */
+public class Client {
+
+    /** run a command through the daemon, or Main if there is none.
+     * @param args the command user put in*/
+    public static void main(String... args) {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            status = copyReply(new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel))));
+        } catch (IOException excp) {
+            System.out.flush();
+            System.err.println("Lost the gitlet daemon: " + excp.getMessage());
+            status = 1;
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** @return a connection to the daemon of the repository in the
+     *  current directory, or null if it is not running.*/
+    static SocketChannel connect() {
+        Path path = Paths.get(Daemon.SOCKET_PATH);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(path));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** copy the frames of a reply to standard output and error.
+     * @param reply the reply of the daemon.
+     * @return the exit status of the command.
+     * @throws IOException if the reply ends early.*/
+    private static int copyReply(DataInputStream reply) throws IOException {
+        byte[] buf = new byte[0];
+        while (true) {
+            byte kind = reply.readByte();
+            int len = reply.readInt();
+            if (kind == Daemon.EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return len;
+            }
+            if (buf.length < len) {
+                buf = new byte[len];
+            }
+            reply.readFully(buf, 0, len);
+            PrintStream out = kind == Daemon.ERR ? System.err : System.out;
+            out.write(buf, 0, len);
+        }
+    }
+}
@@ -1,27 +1,72 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.HashMap;
 import static gitlet.Gitlet.*;
 import static gitlet.Utils.*;
 
-/** Commit object.
+/** Commit object. Commits cannot be changed once made, and carry their
+ *  sha, which is computed once when they are made or read.
+ *
+ *  Commits are stored in a binary encoding, and the sha of a commit is
+ *  the sha of its encoding: MAGIC, a version byte and a flags byte telling
+ *  which of the parent, merge parents, time and message are present; then
+ *  the raw 20-byte ids of the parents present, the time in milliseconds
+ *  as a zigzag varint, the message as a varint length and UTF-8 bytes, and
+ *  the raw id of the root Tree of its files, which is read when the files
+ *  are first asked for. Commits of version 1 list all their files
+ *  instead: their number as a varint followed by each file name, as a
+ *  varint length and UTF-8 bytes, and its raw blob id, in order of name.
+ *  Commits stored by older versions are Java serialized. Both are still
+ *  read, and keep the sha they were stored under.
  *  @author Henry Xu
  */
 public class Commit implements Serializable {
+    /** the serialVersionUID of the Java serialized commits of older
+     *  versions.*/
+    private static final long serialVersionUID = 8938475706807785009L;
+    /** first bytes of every encoded commit.*/
+    static final int MAGIC = 0x47434d54;
+    /** version of the encoding.*/
+    static final byte VERSION = 2;
+    /** version of the encoding that lists all files.*/
+    static final byte BLOB_TABLE_VERSION = 1;
+    /** flag of a commit with a parent.*/
+    private static final int HAS_PARENT = 1;
+    /** flag of a commit with merge parent1.*/
+    private static final int HAS_MERGED1 = 2;
+    /** flag of a commit with merge parent2.*/
+    private static final int HAS_MERGED2 = 4;
+    /** flag of a commit with a time.*/
+    private static final int HAS_TIME = 8;
+    /** flag of a commit with a message.*/
+    private static final int HAS_MESSAGE = 16;
+
     /** commit message.*/
-    private String _message;
+    private final String _message;
     /** commit time.*/
-    private Date _time;
+    private final Date _time;
     /** SHA code of its parent commit.*/
-    private String _parent;
-    /** key: blob name, val: SHA of blob.*/
+    private final String _parent;
+    /** key: blob name, val: SHA of blob. read from the tree on first
+     *  use.*/
     private HashMap<String, String> _blobMap;
     /** parent1 merge.*/
-    private String _mergedParent1 = null;
+    private final String _mergedParent1;
     /** parent2.*/
-    private String _mergedParent2 = null;
+    private final String _mergedParent2;
+    /** the sha of this commit.*/
+    private transient String _sha;
+    /** the sha of the root tree, or null if it is not known yet.*/
+    private transient String _treeSHA;
+    /** the root tree, or null if it is not read yet.*/
+    private transient Tree _root;
 
     /** generate a new commit.
      * @param message commit message.
@@ -30,52 +75,221 @@ public class Commit implements Serializable {
      * @param blobMap blobmap.*/
     public Commit(String message, Date time, String parent,
                   HashMap<String, String> blobMap) {
-        this._message = message;
-        this._time = time;
-        this._parent = parent;
-        this._blobMap = new HashMap<String, String>();
-        for (String key : blobMap.keySet()) {
-            this._blobMap.put(key, blobMap.get(key));
-        }
+        this(message, time, parent, null, null, blobMap);
+    }
+
+    /** generate a new merge commit.
+     * @param message commit message.
+     * @param time commit time.
+     * @param parent the sha of parent commit.
+     * @param mergedParent1 the sha of merge parent1.
+     * @param mergedParent2 the sha of merge parent2.
+     * @param blobMap blobmap.*/
+    public Commit(String message, Date time, String parent,
+                  String mergedParent1, String mergedParent2,
+                  HashMap<String, String> blobMap) {
+        this(message, time == null ? null : new Date(time.getTime()), parent,
+                mergedParent1, mergedParent2, new HashMap<>(blobMap),
+                Tree.build(blobMap), null);
     }
 
-    /** get the distance between this commit and the init commit.
+    /** generate a new commit of the files in a tree.
+     * @param message commit message.
+     * @param time commit time.
+     * @param parent the sha of parent commit.
+     * @param mergedParent1 the sha of merge parent1, or null.
+     * @param mergedParent2 the sha of merge parent2, or null.
+     * @param root the root tree.*/
+    Commit(String message, Date time, String parent, String mergedParent1,
+           String mergedParent2, Tree root) {
+        this(message, new Date(time.getTime()), parent, mergedParent1,
+                mergedParent2, null, root, null);
+    }
+
+    /** make a commit out of fields it keeps as they are.
+     * @param message commit message.
+     * @param time commit time.
+     * @param parent the sha of parent commit.
+     * @param mergedParent1 the sha of merge parent1.
+     * @param mergedParent2 the sha of merge parent2.
+     * @param blobMap blobmap, or null to read it from the tree.
+     * @param root the root tree, or null to read it when needed.
+     * @param sha the sha of the commit, or null to compute it.*/
+    private Commit(String message, Date time, String parent,
+                   String mergedParent1, String mergedParent2,
+                   HashMap<String, String> blobMap, Tree root, String sha) {
+        _message = message;
+        _time = time;
+        _parent = parent;
+        _mergedParent1 = mergedParent1;
+        _mergedParent2 = mergedParent2;
+        _blobMap = blobMap;
+        _root = root;
+        _treeSHA = root == null ? null : root.sha();
+        _sha = sha != null ? sha : Utils.sha1(encode());
+    }
+
+    /** get the distance between this commit and the init commit along
+     *  its longest path, from the generation numbers of its parents.
      * @return the distance.*/
     public int length() {
         if (_parent == null) {
             return 0;
-        } else {
-            return Gitlet.getCommit(_parent).length() + 1;
         }
+        CommitGraph graph = CommitGraph.get();
+        return Math.max(generation(graph, _parent),
+                generation(graph, _mergedParent1));
+    }
+
+    /** @param graph the commit graph.
+     * @param sha the sha of a commit, or null.
+     * @return its generation number, or 0 if SHA is null. a commit that
+     *  is missing from GRAPH is read to find it from its own parents.*/
+    private static int generation(CommitGraph graph, String sha) {
+        if (sha == null) {
+            return 0;
+        }
+        int i = graph.position(sha);
+        if (i < 0) {
+            return Gitlet.getCommit(sha).length() + 1;
+        }
+        return graph.generation(i);
     }
 
     /** get the LENth previous commit of this.
      * @param len the distance.
      * @return that previous commit.*/
     public Commit shorten(int len) {
-        Commit result = this;
-        for (int i = 0; i < len; i++) {
-            result = Gitlet.getCommit(result.getParent());
+        if (len == 0) {
+            return this;
+        }
+        CommitGraph graph = CommitGraph.get();
+        int parent = graph.position(_parent);
+        if (parent < 0) {
+            return Gitlet.getCommit(_parent).shorten(len - 1);
         }
-        return result;
+        RevWalk walk = new RevWalk(graph, RevWalk.DATE).firstParent()
+                .include(parent);
+        int result = walk.next();
+        for (int i = 1; i < len; i++) {
+            result = walk.next();
+        }
+        return Gitlet.getCommit(graph.sha(result));
     }
 
     /** get the sha of this commit.
      * @return sha.*/
     public String getSHA() {
-        return Utils.sha1(Utils.serialize(this));
+        return _sha;
+    }
+
+    /** @return the binary encoding of this commit.*/
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte((_parent != null ? HAS_PARENT : 0)
+                    | (_mergedParent1 != null ? HAS_MERGED1 : 0)
+                    | (_mergedParent2 != null ? HAS_MERGED2 : 0)
+                    | (_time != null ? HAS_TIME : 0)
+                    | (_message != null ? HAS_MESSAGE : 0));
+            for (String parent : new String[] {
+                _parent, _mergedParent1, _mergedParent2}) {
+                if (parent != null) {
+                    out.write(Utils.toBytes(parent));
+                }
+            }
+            if (_time != null) {
+                long time = _time.getTime();
+                Utils.writeVarint(out, (time << 1) ^ (time >> 63));
+            }
+            if (_message != null) {
+                Utils.writeString(out, _message);
+            }
+            out.write(Utils.toBytes(_treeSHA != null ? _treeSHA
+                    : tree().sha()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** @param data a stored commit.
+     * @return if DATA is in the binary encoding.*/
+    static boolean isEncoded(byte[] data) {
+        return data.length > 4 && PackFile.readInt(data, 0) == MAGIC;
+    }
+
+    /** @param data the binary encoding of a commit.
+     * @return the commit.*/
+    static Commit decode(byte[] data) {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(data));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("Corrupt commit.");
+            }
+            byte version = in.readByte();
+            if (version != VERSION && version != BLOB_TABLE_VERSION) {
+                throw Utils.error("Corrupt commit.");
+            }
+            int flags = in.readByte();
+            String[] parents = new String[3];
+            for (int i = 0; i < parents.length; i++) {
+                if ((flags & (HAS_PARENT << i)) != 0) {
+                    parents[i] = Utils.readId(in);
+                }
+            }
+            Date time = null;
+            if ((flags & HAS_TIME) != 0) {
+                long zigzag = Utils.readVarint(in);
+                time = new Date((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            String message = (flags & HAS_MESSAGE) != 0
+                    ? Utils.readString(in) : null;
+            if (version == VERSION) {
+                Commit commit = new Commit(message, time, parents[0],
+                        parents[1], parents[2], null, null,
+                        Utils.sha1(data));
+                commit._treeSHA = Utils.readId(in);
+                return commit;
+            }
+            int n = (int) Utils.readVarint(in);
+            HashMap<String, String> blobs = new HashMap<>(n * 4 / 3 + 1);
+            for (int i = 0; i < n; i++) {
+                String name = Utils.readString(in);
+                blobs.put(name, Utils.readId(in));
+            }
+            return new Commit(message, time, parents[0], parents[1],
+                    parents[2], blobs, null, Utils.sha1(data));
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit.");
+        }
+    }
+
+    /** read a commit stored by an older version.
+     * @param data the Java serialized commit.
+     * @param sha the sha it is stored under.
+     * @return the commit.*/
+    static Commit decodeLegacy(byte[] data, String sha) {
+        Commit commit = Utils.deserialize(data, Commit.class);
+        commit._sha = sha;
+        return commit;
     }
 
     /** check if the sha of given commit is same as itself.
-     * @param commit the commit you compare to.
+     * @param obj the commit you compare to.
      * @return is same.*/
-    public boolean equals(Commit commit) {
-        return this.getSHA().equals(commit.getSHA());
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Commit && _sha.equals(((Commit) obj)._sha);
     }
 
     @Override
     public int hashCode() {
-        return super.hashCode();
+        return _sha.hashCode();
     }
 
     /** @return commit message.*/
@@ -98,32 +312,44 @@ public class Commit implements Serializable {
         return _mergedParent2;
     }
 
-    /** set the sha of merge parent1 commit.
-     * @param mergedParent1 parent1*/
-    public void setMergedParent1(String mergedParent1) {
-        this._mergedParent1 = mergedParent1;
+    /** @return all blobs, read from the tree on first use. they must not
+     *  be changed.*/
+    public HashMap<String, String> getBlobs() {
+        if (_blobMap == null) {
+            HashMap<String, String> blobs = new HashMap<>();
+            tree().flatten("", blobs);
+            _blobMap = blobs;
+        }
+        return _blobMap;
     }
 
-    /** set the sha of merge parent2 commit.
-     * @param mergedParent2 parent2.*/
-    public void setMergedParent2(String mergedParent2) {
-        this._mergedParent2 = mergedParent2;
+    /** @return if all blobs have been read.*/
+    boolean blobsRead() {
+        return _blobMap != null;
     }
 
-    /** @return all blobs.*/
-    public HashMap<String, String> getBlobs() {
-        return _blobMap;
+    /** @return the root tree of the files of this commit, read or built
+     *  from all its blobs on first use.*/
+    Tree tree() {
+        if (_root == null) {
+            _root = _treeSHA != null ? Tree.read(_treeSHA)
+                    : Tree.build(_blobMap);
+        }
+        return _root;
     }
 
     /** @return commit time.*/
     public Date getTime() {
-        return _time;
+        return _time == null ? null : new Date(_time.getTime());
     }
 
     /** get the sha of the given file.
      * @param fileName the name of given file.
      * @return the sha.*/
     public String getFileSHA(String fileName) {
+        if (_blobMap == null) {
+            return tree().find(fileName);
+        }
         return _blobMap.get(fileName);
     }
 }
@@ -0,0 +1,353 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** The shape of the commit history, kept apart from the commits so that
+ *  walking it does not deserialize any commit.
+ *
+ *  The commit-graph file is "GGRF" and a version int followed by one
+ *  fixed-width record per commit, in the order the commits were made: the
+ *  raw 20-byte id, the positions of the first and second parent (-1 if
+ *  none), the generation number and the commit time in milliseconds. A
+ *  root commit has generation 1 and any other commit one more than its
+ *  highest parent, so an ancestor always has a lower generation. Records
+ *  are appended as commits are made. The ids are kept in an
+ *  ObjectIdTable, which also finds commits by abbreviated id.
+ *  @author Henry Xu
+ */
+class CommitGraph {
+
+    /** the path of the commit graph.*/
+    static final String GRAPH_PATH = ".gitlet/commit-graph";
+    /** magic number of commit graph files.*/
+    static final int MAGIC = 0x47475246;
+    /** format version of commit graph files.*/
+    static final int VERSION = 1;
+    /** size of the header.*/
+    private static final int HEADER = 8;
+    /** size of a record.*/
+    static final int RECORD = PackFile.ID_LENGTH + 4 + 4 + 4 + 8;
+
+    /** the graph of the repository in the current directory.*/
+    private static CommitGraph _graph;
+
+    /** number of commits.*/
+    private int _size;
+    /** raw ids of the commits, by position.*/
+    private ObjectIdTable _ids;
+    /** position of the first parent of each commit, or -1.*/
+    private int[] _parent1;
+    /** position of the second parent of each commit, or -1.*/
+    private int[] _parent2;
+    /** generation number of each commit.*/
+    private int[] _generation;
+    /** commit time of each commit in milliseconds.*/
+    private long[] _time;
+
+    /** make an empty graph.*/
+    CommitGraph() {
+        _ids = new ObjectIdTable();
+        _parent1 = new int[16];
+        _parent2 = new int[16];
+        _generation = new int[16];
+        _time = new long[16];
+    }
+
+    /** @return the commit graph of the repository in the current
+     *  directory, rebuilt from the commit list if it has none yet.*/
+    static CommitGraph get() {
+        if (_graph == null) {
+            File f = new File(GRAPH_PATH);
+            if (f.exists()) {
+                _graph = read(Utils.readContents(f));
+            } else {
+                _graph = rebuild();
+            }
+        }
+        return _graph;
+    }
+
+    /** forget the graph read so far, so that the next get reads it again.*/
+    static void reset() {
+        _graph = null;
+    }
+
+    /** @param data contents of a commit graph file.
+     * @return the graph.*/
+    private static CommitGraph read(byte[] data) {
+        if (data.length < HEADER || PackFile.readInt(data, 0) != MAGIC
+                || PackFile.readInt(data, 4) != VERSION) {
+            throw Utils.error("Corrupt commit graph.");
+        }
+        int count = (data.length - HEADER) / RECORD;
+        byte[] ids = new byte[count * PackFile.ID_LENGTH];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(data, HEADER + i * RECORD, ids,
+                    i * PackFile.ID_LENGTH, PackFile.ID_LENGTH);
+        }
+        CommitGraph graph = new CommitGraph();
+        graph._ids = new ObjectIdTable(ids, count);
+        for (int i = 0; i < count; i++) {
+            int p = HEADER + i * RECORD + PackFile.ID_LENGTH;
+            graph.append(PackFile.readInt(data, p),
+                    PackFile.readInt(data, p + 4),
+                    PackFile.readInt(data, p + 8),
+                    PackFile.readLong(data, p + 12));
+        }
+        return graph;
+    }
+
+    /** build the graph of an existing repository and write it. the
+     *  commits are taken from its commit list, which a repository of the
+     *  old format has once LegacyRepository converts it, and then the
+     *  other commits in the object store in order of commit time.
+     * @return the graph.*/
+    private static CommitGraph rebuild() {
+        CommitGraph graph = new CommitGraph();
+        File list = new File(Gitlet.COMMIT_LIST_PATH);
+        if (list.exists()) {
+            for (String sha : Utils.readContentsAsString(list).split("\n")) {
+                if (!sha.isEmpty() && graph.position(sha) < 0) {
+                    graph.insert(sha, Gitlet.getCommit(sha));
+                }
+            }
+        }
+        ArrayList<String> rest = new ArrayList<>();
+        for (String sha : ObjectStore.commitIds()) {
+            if (graph.position(sha) < 0) {
+                rest.add(sha);
+            }
+        }
+        graph.insertAll(rest);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.writeHeader(bytes);
+        for (int i = 0; i < graph._size; i++) {
+            graph.writeRecord(bytes, i);
+        }
+        Utils.writeContents(new File(GRAPH_PATH), bytes.toByteArray());
+        return graph;
+    }
+
+    /** add a new commit to the graph and to the commit graph file. its
+     *  parents must already be in the graph.
+     * @param sha the SHA of the commit.
+     * @param commit the commit.*/
+    void add(String sha, Commit commit) {
+        if (position(sha) >= 0) {
+            return;
+        }
+        File f = new File(GRAPH_PATH);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (!f.exists()) {
+            writeHeader(bytes);
+        }
+        writeRecord(bytes, insert(sha, commit));
+        Utils.appendContents(f, bytes.toByteArray());
+    }
+
+    /** add commits in any order to the graph in memory, each after its
+     *  parents. commits whose parents are missing are added last.
+     * @param shas the SHAs of the commits.*/
+    private void insertAll(ArrayList<String> shas) {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String sha : shas) {
+            commits.put(sha, Gitlet.getCommit(sha));
+        }
+        shas.sort((x, y) -> {
+            int cmp = Long.compare(time(commits.get(x)),
+                    time(commits.get(y)));
+            return cmp != 0 ? cmp : x.compareTo(y);
+        });
+        ArrayList<String> pending = shas;
+        while (!pending.isEmpty()) {
+            ArrayList<String> later = new ArrayList<>();
+            for (String sha : pending) {
+                Commit commit = commits.get(sha);
+                if (isKnown(commit.getParent())
+                        && isKnown(commit.getMergedParent1())) {
+                    insert(sha, commit);
+                } else {
+                    later.add(sha);
+                }
+            }
+            if (later.size() == pending.size()) {
+                String sha = later.remove(0);
+                insert(sha, commits.get(sha));
+            }
+            pending = later;
+        }
+    }
+
+    /** @param sha the full or abbreviated SHA of a parent, or null.
+     * @return if it is null or already in the graph.*/
+    private boolean isKnown(String sha) {
+        return sha == null || find(sha) >= 0;
+    }
+
+    /** @param commit a commit.
+     * @return its commit time in milliseconds.*/
+    private static long time(Commit commit) {
+        return commit.getTime() == null ? 0 : commit.getTime().getTime();
+    }
+
+    /** add a commit to the graph in memory.
+     * @param sha the SHA of the commit.
+     * @param commit the commit.
+     * @return its position.*/
+    private int insert(String sha, Commit commit) {
+        return insert(Utils.toBytes(sha), find(commit.getParent()),
+                find(commit.getMergedParent1()), time(commit));
+    }
+
+    /** add a commit to the graph in memory.
+     * @param id the raw id of the commit.
+     * @param p1 position of its first parent, or -1.
+     * @param p2 position of its second parent, or -1.
+     * @param time its commit time.
+     * @return its position.*/
+    int insert(byte[] id, int p1, int p2, long time) {
+        if (p2 == p1) {
+            p2 = -1;
+        }
+        int generation = 1;
+        if (p1 >= 0) {
+            generation = Math.max(generation, _generation[p1] + 1);
+        }
+        if (p2 >= 0) {
+            generation = Math.max(generation, _generation[p2] + 1);
+        }
+        _ids.add(id);
+        append(p1, p2, generation, time);
+        return _size - 1;
+    }
+
+    /** find a parent, which may be abbreviated in old merge commits.
+     * @param sha the full or abbreviated SHA of a commit, or null.
+     * @return its position, or -1.*/
+    private int find(String sha) {
+        if (sha == null) {
+            return -1;
+        }
+        return Math.max(_ids.findPrefix(sha), -1);
+    }
+
+    /** add a record in memory. its id must be in the table already.
+     * @param p1 position of the first parent.
+     * @param p2 position of the second parent.
+     * @param generation generation number.
+     * @param time commit time.*/
+    private void append(int p1, int p2, int generation, long time) {
+        if (_size == _parent1.length) {
+            int capacity = 2 * _size;
+            _parent1 = Arrays.copyOf(_parent1, capacity);
+            _parent2 = Arrays.copyOf(_parent2, capacity);
+            _generation = Arrays.copyOf(_generation, capacity);
+            _time = Arrays.copyOf(_time, capacity);
+        }
+        _parent1[_size] = p1;
+        _parent2[_size] = p2;
+        _generation[_size] = generation;
+        _time[_size] = time;
+        _size += 1;
+    }
+
+    /** @param out where to write the header of a commit graph file.*/
+    private void writeHeader(ByteArrayOutputStream out) {
+        DataOutputStream data = new DataOutputStream(out);
+        try {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @param out where to write a record.
+     * @param i the position of the record.*/
+    private void writeRecord(ByteArrayOutputStream out, int i) {
+        DataOutputStream data = new DataOutputStream(out);
+        try {
+            data.write(_ids.id(i));
+            data.writeInt(_parent1[i]);
+            data.writeInt(_parent2[i]);
+            data.writeInt(_generation[i]);
+            data.writeLong(_time[i]);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return the number of commits.*/
+    int size() {
+        return _size;
+    }
+
+    /** @param sha the SHA of a commit.
+     * @return its position, or -1 if it is not in the graph.*/
+    int position(String sha) {
+        return _ids.find(sha);
+    }
+
+    /** @param prefix an abbreviated SHA of a commit.
+     * @return the position of the only commit whose SHA starts with
+     *  PREFIX, ObjectIdTable.NONE or ObjectIdTable.AMBIGUOUS.*/
+    int resolve(String prefix) {
+        return _ids.findPrefix(prefix);
+    }
+
+    /** @param i a position.
+     * @return the SHA of the commit at I.*/
+    String sha(int i) {
+        return _ids.sha(i);
+    }
+
+    /** @param i a position.
+     * @return the position of its first parent, or -1.*/
+    int parent1(int i) {
+        return _parent1[i];
+    }
+
+    /** @param i a position.
+     * @return the position of its second parent, or -1.*/
+    int parent2(int i) {
+        return _parent2[i];
+    }
+
+    /** @param i a position.
+     * @return its generation number.*/
+    int generation(int i) {
+        return _generation[i];
+    }
+
+    /** @param i a position.
+     * @return its commit time in milliseconds.*/
+    long time(int i) {
+        return _time[i];
+    }
+
+    /** check ancestry by walking back from the descendant in order of
+     *  generation, stopping below the generation of the ancestor.
+     * @param ancestor position of a commit.
+     * @param descendant position of another commit.
+     * @return if ANCESTOR is DESCENDANT or one of its ancestors.*/
+    boolean isAncestor(int ancestor, int descendant) {
+        int floor = _generation[ancestor];
+        RevWalk walk = new RevWalk(this, RevWalk.TOPO).include(descendant);
+        while (walk.hasNext()) {
+            int i = walk.next();
+            if (i == ancestor) {
+                return true;
+            }
+            if (_generation[i] < floor) {
+                return false;
+            }
+        }
+        return false;
+    }
+}
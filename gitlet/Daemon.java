@@ -0,0 +1,274 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/** Runs gitlet commands sent by Clients over a Unix domain socket at
+ *  SOCKET_PATH, so that they neither start a JVM nor read the repository
+ *  again for every command. Commands run one at a time, each holding the
+ *  RepoLock like a command run by Main. Between commands the daemon keeps
+ *  the stage, the commit graph, the message index and the packs it has
+ *  read, and drops them when the count in the lock file shows that
+ *  another process has run a command since; commits and trees never
+ *  change, so their caches are always kept. The daemon exits once no
+ *  client has connected for gitlet.daemonIdle milliseconds, ten minutes
+ *  by default. A client that has not sent its whole request within
+ *  gitlet.daemonRequest milliseconds, ten seconds by default, is
+ *  disconnected, so that it cannot keep other clients waiting.
+ *
+ *  A request is the number of arguments as an int and then each argument
+ *  as written by DataOutputStream.writeUTF. The reply is frames of OUT or
+ *  ERR, a length as an int and that many bytes of output, as the command
+ *  prints them, and last EXIT and an exit status as an int.
+ *  @author Henry Xu
+ */
+class Daemon {
+
+    /** the path of the socket.*/
+    static final String SOCKET_PATH = ".gitlet/daemon.sock";
+    /** milliseconds without a client before the daemon exits.*/
+    static final long IDLE_TIMEOUT = Long.getLong("gitlet.daemonIdle",
+            10 * 60 * 1000);
+    /** kind of the last frame of a reply.*/
+    static final byte EXIT = 0;
+    /** kind of a frame of standard output.*/
+    static final byte OUT = 1;
+    /** kind of a frame of standard error.*/
+    static final byte ERR = 2;
+    /** milliseconds a client has to send its request.*/
+    static final long REQUEST_TIMEOUT = Long.getLong("gitlet.daemonRequest",
+            10 * 1000);
+    /** size of the buffers of output, and so largest frame.*/
+    private static final int FRAME_SIZE = 8192;
+    /** most arguments in a request.*/
+    private static final int MAX_ARGS = 1 << 20;
+
+    /** the stage as the last command saved it, or null.*/
+    private Stage _stage;
+    /** the count in the lock file after the last command, or -1.*/
+    private long _count = -1;
+    /** closes connections whose request is late.*/
+    private final ScheduledExecutorService _watchdog =
+            Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "gitlet-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** serve commands until the idle timeout.*/
+    static void serve() {
+        SocketChannel running = Client.connect();
+        if (running != null) {
+            try {
+                running.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            System.out.println("A daemon is already running.");
+            return;
+        }
+        Path path = Paths.get(SOCKET_PATH);
+        Daemon daemon = new Daemon();
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            Files.deleteIfExists(path);
+            server.bind(UnixDomainSocketAddress.of(path));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            long lastUsed = System.currentTimeMillis();
+            while (true) {
+                long idle = System.currentTimeMillis() - lastUsed;
+                if (idle >= IDLE_TIMEOUT) {
+                    break;
+                }
+                selector.select(IDLE_TIMEOUT - idle);
+                selector.selectedKeys().clear();
+                SocketChannel client = server.accept();
+                if (client == null) {
+                    continue;
+                }
+                try (client) {
+                    client.configureBlocking(true);
+                    daemon.handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+                lastUsed = System.currentTimeMillis();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            daemon._watchdog.shutdownNow();
+            path.toFile().delete();
+        }
+    }
+
+    /** read a request from a client, run it and reply.
+     * @param channel the connection to the client.
+     * @throws IOException if the client cannot be read or written, or
+     *  does not send its request in time.*/
+    private void handle(SocketChannel channel) throws IOException {
+        String[] args = readRequest(channel);
+        DataOutputStream reply = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(channel), FRAME_SIZE + 5));
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FrameStream(reply, OUT), FRAME_SIZE));
+        PrintStream err = new PrintStream(new BufferedOutputStream(
+                new FrameStream(reply, ERR), FRAME_SIZE));
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        int status = 0;
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            run(args);
+        } catch (RuntimeException excp) {
+            forget();
+            System.err.println(excp);
+            status = 1;
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        out.flush();
+        err.flush();
+        reply.writeByte(EXIT);
+        reply.writeInt(status);
+        reply.flush();
+    }
+
+    /** read a request, closing CHANNEL if it is not all read within
+     *  REQUEST_TIMEOUT.
+     * @param channel the connection to the client.
+     * @return the arguments of the command.
+     * @throws IOException if the request cannot be read in time.*/
+    private String[] readRequest(SocketChannel channel) throws IOException {
+        ScheduledFuture<?> deadline = _watchdog.schedule(() -> {
+            try {
+                channel.close();
+            } catch (IOException excp) {
+                return;
+            }
+        }, REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        String[] args;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel)));
+            int argc = in.readInt();
+            if (argc < 0 || argc > MAX_ARGS) {
+                throw new IOException("bad request");
+            }
+            args = new String[argc];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+        } catch (IOException excp) {
+            deadline.cancel(false);
+            throw excp;
+        }
+        if (!deadline.cancel(false)) {
+            throw new IOException("request timed out");
+        }
+        return args;
+    }
+
+    /** run a command like Main does, with what was kept from the last.
+     * @param args the command user put in.*/
+    private void run(String... args) {
+        if (args.length == 0) {
+            System.out.println("Please enter a command.");
+            return;
+        }
+        if (args[0].equals("init")) {
+            Main.initCommand();
+            return;
+        }
+        if (!Main.isInitialized()) {
+            return;
+        }
+        if (args[0].equals("daemon")) {
+            System.out.println("A daemon is already running.");
+            return;
+        }
+        try (RepoLock lock = RepoLock.acquire()) {
+            if (lock.count() != _count) {
+                forget();
+            }
+            Gitlet gitlet = Gitlet.load(_stage);
+            _stage = null;
+            _count = -1;
+            Main.run(gitlet, args);
+            Main.saveGitlet(gitlet);
+            _stage = gitlet.loadedStage();
+            _count = lock.count() + 1;
+        }
+        if (Boolean.getBoolean("gitlet.stats")) {
+            System.err.println(Gitlet.cacheStats());
+        }
+    }
+
+    /** drop everything read from the repository that may have changed.*/
+    private void forget() {
+        _stage = null;
+        _count = -1;
+        CommitGraph.reset();
+        MessageIndex.reset();
+        ObjectStore.reset();
+    }
+
+    /** writes what it is given as frames of one kind.*/
+    private static class FrameStream extends OutputStream {
+
+        /** where frames are written.*/
+        private final DataOutputStream _reply;
+        /** OUT or ERR.*/
+        private final byte _kind;
+
+        /** @param reply where frames are written.
+         * @param kind OUT or ERR.*/
+        FrameStream(DataOutputStream reply, byte kind) {
+            _reply = reply;
+            _kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            _reply.writeByte(_kind);
+            _reply.writeInt(len);
+            _reply.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _reply.flush();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/** Delta encoding of one blob against another.
+ *  A delta is a list of instructions that rebuild a target from a base:
+ *  COPY, an offset and a length, copies bytes of the base; INSERT, a
+ *  length and that many bytes, adds new bytes.
+ *  @author Henry Xu
+ */
+class Delta {
+
+    /** instruction copying bytes from the base.*/
+    static final byte COPY = 0;
+    /** instruction inserting new bytes.*/
+    static final byte INSERT = 1;
+    /** size of the blocks of the base that copies are searched for.*/
+    private static final int BLOCK = 16;
+
+    /** compute a delta.
+     * @param base the base.
+     * @param target the contents to encode against BASE.
+     * @return the delta instructions.*/
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int pending = 0;
+            int i = 0;
+            while (i < target.length) {
+                Integer start = null;
+                if (i + BLOCK <= target.length) {
+                    start = blocks.get(hash(target, i));
+                }
+                int len = start == null ? 0 : match(base, start, target, i);
+                if (len < BLOCK) {
+                    i += 1;
+                    continue;
+                }
+                insert(out, target, pending, i);
+                out.writeByte(COPY);
+                out.writeInt(start);
+                out.writeInt(len);
+                i += len;
+                pending = i;
+            }
+            insert(out, target, pending, target.length);
+            out.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** rebuild a target from its base and delta.
+     * @param base the base.
+     * @param delta the delta instructions.
+     * @param length the length of the target.
+     * @return the target.*/
+    static byte[] apply(byte[] base, DataInputStream delta, int length)
+        throws IOException {
+        byte[] result = new byte[length];
+        int pos = 0;
+        while (pos < length) {
+            byte op = delta.readByte();
+            if (op == COPY) {
+                int offset = delta.readInt();
+                int len = delta.readInt();
+                System.arraycopy(base, offset, result, pos, len);
+                pos += len;
+            } else if (op == INSERT) {
+                int len = delta.readInt();
+                delta.readFully(result, pos, len);
+                pos += len;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        return result;
+    }
+
+    /** write an INSERT of TARGET[FROM..TO), if it is not empty.
+     * @param out the delta being written.
+     * @param target the target.
+     * @param from first byte to insert.
+     * @param to end of the bytes to insert.*/
+    private static void insert(DataOutputStream out, byte[] target,
+                               int from, int to) throws IOException {
+        if (from < to) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** @param base the base.
+     * @param start position in BASE.
+     * @param target the target.
+     * @param pos position in TARGET.
+     * @return the number of equal bytes from START and POS on.*/
+    private static int match(byte[] base, int start, byte[] target, int pos) {
+        int len = 0;
+        while (start + len < base.length && pos + len < target.length
+                && base[start + len] == target[pos + len]) {
+            len += 1;
+        }
+        return len;
+    }
+
+    /** @param buf a buffer.
+     * @param pos position in BUF.
+     * @return hash of the BLOCK bytes of BUF from POS on.*/
+    private static int hash(byte[] buf, int pos) {
+        int h = 0;
+        for (int k = pos; k < pos + BLOCK; k++) {
+            h = 31 * h + buf[k];
+        }
+        return h;
+    }
+}
@@ -1,82 +1,309 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.Serializable;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.PriorityQueue;
+import java.util.TreeMap;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.IntStream;
 
 /** Manager of the whole project.
+ *  The state of a repository is kept in separate files: HEAD names the
+ *  current branch, refs/ holds one file per branch with the SHA of its
+ *  commit, commit-graph lists all commits in the order they were made,
+ *  messages and message-index hold their messages for find, and index
+ *  holds the serialized Stage. Only HEAD and the current branch are read when a
+ *  command starts; the rest is read on first use, and save writes back
+ *  only what the command changed.
  *  @author Henry Xu
  */
-public class Gitlet implements Serializable {
+public class Gitlet {
 
-    /** key: message, val: SHA of commit.*/
-    private ArrayList<String> _commitMap;
-    /** key: branch name, val: SHA of commit.*/
+    /** key: branch name, val: SHA of commit. read on first use.*/
     private HashMap<String, String> _branchMap;
-    /** stage.*/
+    /** branches changed by this command. val is null if removed.*/
+    private LinkedHashMap<String, String> _changedBranches =
+            new LinkedHashMap<>();
+    /** stage, read on first use.*/
     private Stage _stage;
+    /** if the stage is changed by this command.*/
+    private boolean _stageChanged;
     /** the SHA of current head commit.*/
     private String _head;
     /** the name of current branch.*/
     private String _branch;
+    /** if the current branch is changed by this command.*/
+    private boolean _branchChanged;
+    /** plain files in the working directory, listed on first use.*/
+    private List<String> _workingFiles;
     /** .gitlet path.*/
     static final String GITLET_DIR = ".gitlet/";
-    /** the path of gitlet.*/
-    static final String GITLET_PATH = ".gitlet/gitlet";
+    /** the path of the name of the current branch.*/
+    static final String HEAD_PATH = ".gitlet/HEAD";
+    /** the path of all branches.*/
+    static final String REFS_DIR = ".gitlet/refs/";
+    /** the path of the list of all commits of old repositories, which is
+     *  only read to build their commit graph.*/
+    static final String COMMIT_LIST_PATH = ".gitlet/commit-list";
+    /** the path of the stage.*/
+    static final String INDEX_PATH = ".gitlet/index";
+
+    /** weight of a cached commit: one, and one per file it tracks once
+     *  its files have been read.*/
+    private static final Utils.Function<Commit, Integer> COMMIT_WEIGHT =
+        new Utils.Function<Commit, Integer>() {
+            @Override
+            Integer apply(Commit commit) {
+                return commit.blobsRead() ? 1 + commit.getBlobs().size() : 1;
+            }
+        };
+    /** commits read by this process. commits never change, so the cache
+     *  is never invalidated. bounded by gitlet.commitCache entries and,
+     *  if set, gitlet.commitCacheWeight tracked files in total.*/
+    private static final LruCache<String, Commit> COMMIT_CACHE =
+            new LruCache<>(Integer.getInteger("gitlet.commitCache", 1024),
+                    Long.getLong("gitlet.commitCacheWeight", 0),
+                    COMMIT_WEIGHT);
+    /** format of dates in the log.*/
+    private static final DateTimeFormatter LOG_DATE =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z");
     /** the path of all commits.*/
     static final String COMMITS_DIR = ".gitlet/commits/";
     /** the path of all blobs.*/
     static final String BLOBS_DIR = ".gitlet/blobs/";
+    /** the path of all trees.*/
+    static final String TREES_DIR = ".gitlet/trees/";
 
     /** make a initial gitlet.*/
     public Gitlet() {
-        _commitMap = new ArrayList<String>();
         _branchMap = new HashMap<String, String>();
         _stage = new Stage();
+        _stageChanged = true;
         _branch = "master";
+        _branchChanged = true;
 
         Commit init = new Commit("initial commit", new Date(0),
                 null, new HashMap<String, String>());
-        String sha = Utils.sha1(Utils.serialize(init));
+        String sha = init.getSHA();
         saveCommit(init, sha);
 
+        CommitGraph.get().add(sha, init);
+        MessageIndex.get().update();
         _head = sha;
         _stage.setHead(init);
-        _commitMap.add(sha);
-        _branchMap.put("master", sha);
+        setBranch("master", sha);
+    }
+
+    /** open the gitlet in the current directory.
+     * @param branch the name of current branch.
+     * @param head the SHA of current head commit.*/
+    private Gitlet(String branch, String head) {
+        _branch = branch;
+        _head = head;
+    }
+
+    /** read the gitlet in the current directory. only HEAD and the current
+     *  branch are read now.
+     * @return the gitlet.*/
+    public static Gitlet load() {
+        String branch = Utils.readContentsAsString(new File(HEAD_PATH));
+        String head = Utils.readContentsAsString(new File(REFS_DIR + branch));
+        return new Gitlet(branch, head);
+    }
+
+    /** read the gitlet in the current directory like load, but with a
+     *  stage that is already in memory.
+     * @param stage the stage as the last command saved it, or null to
+     *  read it on first use.
+     * @return the gitlet.*/
+    static Gitlet load(Stage stage) {
+        Gitlet gitlet = load();
+        if (stage != null) {
+            gitlet._stage = stage;
+            stage.setHead(gitlet.getHead());
+        }
+        return gitlet;
+    }
+
+    /** @return the stage if this command read it, or null.*/
+    Stage loadedStage() {
+        return _stage;
+    }
+
+    /** write back the parts of the state changed by this command.*/
+    public void save() {
+        if (_branchChanged) {
+            Utils.writeContents(new File(HEAD_PATH), _branch);
+        }
+        if (!_changedBranches.isEmpty()) {
+            new File(REFS_DIR).mkdirs();
+        }
+        for (String name : _changedBranches.keySet()) {
+            File ref = new File(REFS_DIR + name);
+            String sha = _changedBranches.get(name);
+            if (sha == null) {
+                ref.delete();
+            } else {
+                Utils.writeContents(ref, sha);
+            }
+        }
+        if (_stage != null && _workingFiles != null) {
+            _stage.prune(_workingFiles);
+        }
+        if (_stageChanged || _stage != null && _stage.entriesChanged()) {
+            _stage.write(new File(INDEX_PATH));
+        }
+        _changedBranches.clear();
+        _stageChanged = false;
+        _branchChanged = false;
+    }
+
+    /** find a commit by its full or abbreviated id, printing an error
+     *  if there is no such commit or more than one.
+     * @param commitID the id.
+     * @return the full SHA of the commit, or null.*/
+    private String resolveCommit(String commitID) {
+        int i = CommitGraph.get().resolve(commitID);
+        if (i == ObjectIdTable.AMBIGUOUS) {
+            System.out.println("Ambiguous commit id.");
+            return null;
+        }
+        if (i < 0) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        }
+        return CommitGraph.get().sha(i);
+    }
+
+    /** @return paths of the plain files in the working directory and
+     *  the directories below it that are not ignored, listed once per
+     *  command.*/
+    private List<String> workingFiles() {
+        if (_workingFiles == null) {
+            _workingFiles = WorkingTree.list();
+        }
+        return _workingFiles;
+    }
+
+    /** @return all branches. key: branch name, val: SHA of commit.*/
+    private HashMap<String, String> branches() {
+        if (_branchMap == null) {
+            _branchMap = new HashMap<String, String>();
+            List<String> names = Utils.plainFilenamesIn(REFS_DIR);
+            for (String name : names) {
+                _branchMap.put(name,
+                        Utils.readContentsAsString(new File(REFS_DIR + name)));
+            }
+            for (String name : _changedBranches.keySet()) {
+                if (_changedBranches.get(name) == null) {
+                    _branchMap.remove(name);
+                } else {
+                    _branchMap.put(name, _changedBranches.get(name));
+                }
+            }
+        }
+        return _branchMap;
+    }
+
+    /** point a branch to a commit.
+     * @param name the name of the branch.
+     * @param sha the SHA of the commit, or null to remove the branch.*/
+    private void setBranch(String name, String sha) {
+        if (_branchMap != null) {
+            if (sha == null) {
+                _branchMap.remove(name);
+            } else {
+                _branchMap.put(name, sha);
+            }
+        }
+        _changedBranches.put(name, sha);
+    }
+
+    /** @return the stage.*/
+    private Stage stage() {
+        if (_stage == null) {
+            _stage = Stage.read(new File(INDEX_PATH));
+            _stage.setHead(getHead());
+        }
+        return _stage;
+    }
+
+    /** @return the stage, which is going to be changed.*/
+    private Stage changeStage() {
+        _stageChanged = true;
+        return stage();
     }
 
     /** save a commit.
      * @param commit the commit to be save.
      * @param sha the sha1 code of this commit.*/
     public void saveCommit(Commit commit, String sha) {
-        File f = new File(COMMITS_DIR + sha);
-        Utils.writeObject(f, commit);
+        ObjectStore.writeCommit(sha, commit);
     }
 
-    /** add a file.
-     * @param fileName name of this file.*/
+    /** add a file, or every file in a directory that is not ignored.
+     * @param fileName path of this file or directory.*/
     public void add(String fileName) {
-        _stage.add(fileName);
+        fileName = workingPath(fileName);
+        if (fileName == null) {
+            return;
+        }
+        if (fileName.isEmpty() || new File(fileName).isDirectory()) {
+            changeStage().add(WorkingTree.list(fileName));
+        } else {
+            changeStage().add(fileName);
+        }
+    }
+
+    /** add many files, hashing them in parallel. directories add every
+     *  file in them that is not ignored.
+     * @param fileNames paths of the files or directories.*/
+    public void add(List<String> fileNames) {
+        ArrayList<String> paths = new ArrayList<>();
+        for (String fileName : fileNames) {
+            fileName = workingPath(fileName);
+            if (fileName == null) {
+                continue;
+            }
+            if (fileName.isEmpty() || new File(fileName).isDirectory()) {
+                paths.addAll(WorkingTree.list(fileName));
+            } else {
+                paths.add(fileName);
+            }
+        }
+        changeStage().add(paths);
     }
 
     /** make a commit.
      * @param message commit message.*/
     public void commit(String message) {
-        Commit commit = _stage.commit(message);
+        Commit commit = changeStage().commit(message, _head);
         if (commit == null) {
             return;
         }
-        String sha = Utils.sha1(Utils.serialize(commit));
-        _commitMap.add(sha);
+        String sha = commit.getSHA();
+        stage().setHead(commit);
         saveCommit(commit, sha);
+        CommitGraph.get().add(sha, commit);
+        MessageIndex.get().update();
         _head = sha;
-        _branchMap.put(_branch, _head);
+        setBranch(_branch, _head);
     }
 
     /** make a commit.
@@ -84,76 +311,149 @@ public class Gitlet implements Serializable {
      * @param parent1 parent1
      * @param parent2 parent2*/
     public void mergeCommit(String message, String parent1, String parent2) {
-        Commit commit = _stage.mergeCommit(message, parent1, parent2);
+        Commit commit = changeStage().mergeCommit(message, _head,
+                parent1, parent2);
         if (commit == null) {
             return;
         }
-        String sha = Utils.sha1(Utils.serialize(commit));
-        _commitMap.add(sha);
+        String sha = commit.getSHA();
+        stage().setHead(commit);
         saveCommit(commit, sha);
+        CommitGraph.get().add(sha, commit);
+        MessageIndex.get().update();
         _head = sha;
-        _branchMap.put(_branch, _head);
+        setBranch(_branch, _head);
     }
 
     /** remove a file.
      * @param fileName the name of this file*/
     public void rm(String fileName) {
-        _stage.rm(fileName);
-    }
-
-    /** print the log of head.*/
-    public void log() {
-        String sha = _head;
-        while (sha != null) {
-            Commit commit = getCommit(sha);
-            System.out.println("===");
-            System.out.println("commit " + sha);
-            if (commit.getMergedParent1() != null) {
-                System.out.println("Merge: " + commit.getMergedParent1()
-                        + " " + commit.getMergedParent2());
+        fileName = workingPath(fileName);
+        if (fileName != null) {
+            changeStage().rm(fileName);
+        }
+    }
+
+    /** @param fileName a path given by the user.
+     * @return the path relative to the working directory as
+     *  WorkingTree.normalize gives it, or null after printing an error if
+     *  it is absolute or outside the working directory.*/
+    private static String workingPath(String fileName) {
+        String path = WorkingTree.normalize(fileName);
+        if (path == null) {
+            System.out.println("File is outside the working directory.");
+        }
+        return path;
+    }
+
+    /** print the log of head.
+     * @param options which commits to print and how.*/
+    public void log(LogOptions options) {
+        CommitGraph graph = CommitGraph.get();
+        RevWalk walk = new RevWalk(graph, RevWalk.DATE).firstParent()
+                .include(graph.position(_head)).paths(options.paths());
+        for (String revision : options.excludes()) {
+            String sha = branches().get(revision);
+            if (sha == null) {
+                sha = resolveCommit(revision);
+                if (sha == null) {
+                    return;
+                }
+            }
+            walk.exclude(graph.position(sha));
+        }
+        printLog(graph, walk, options, true);
+    }
+
+    /** print the global log.
+     * @param options which commits to print and how.*/
+    public void globalLog(LogOptions options) {
+        CommitGraph graph = CommitGraph.get();
+        printLog(graph, IntStream.range(0, graph.size()).iterator(),
+                options, false);
+    }
+
+    /** print log entries from the commit graph and the message index,
+     *  without reading the commits themselves. the walk stops as soon as
+     *  enough commits are printed.
+     * @param graph the commit graph.
+     * @param walk positions of the commits, produced as they are needed.
+     * @param options which commits to print and how.
+     * @param newestFirst if WALK never goes to a newer commit, so that it
+     *  can stop at the first commit older than the since option.*/
+    private void printLog(CommitGraph graph, Iterator<Integer> walk,
+                          LogOptions options, boolean newestFirst) {
+        MessageIndex messages = MessageIndex.get();
+        ZoneId zone = ZoneId.systemDefault();
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        int shown = 0;
+        while (shown < options.maxCount() && walk.hasNext()) {
+            int i = walk.next();
+            long time = graph.time(i);
+            if (newestFirst && time < options.since()) {
+                break;
+            }
+            if (time < options.since() || time > options.until()) {
+                continue;
+            }
+            shown += 1;
+            String sha = graph.sha(i);
+            if (options.oneline()) {
+                out.println(sha.substring(0, 7) + " " + messages.message(i));
+                continue;
             }
-            Date time = commit.getTime();
-            System.out.println(String.format("Date: %1$ta %1$tb"
-                    + " %1$te %1$tT %1$tY %1$tz", time));
-            System.out.println(commit.getMessage());
-            System.out.println();
-            sha = commit.getParent();
-        }
-    }
-
-    /** print the global log.*/
-    public void globalLog() {
-        for (String sha : _commitMap) {
-            File f = new File(COMMITS_DIR + sha);
-            Commit commit = Utils.readObject(f, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + sha);
-            if (commit.getMergedParent1() != null) {
-                System.out.println("Merge: " + commit.getMergedParent1()
-                        + " " + commit.getMergedParent2());
+            out.println("===");
+            out.println("commit " + sha);
+            if (graph.parent2(i) >= 0) {
+                out.println("Merge: "
+                        + graph.sha(graph.parent2(i)).substring(0, 7) + " "
+                        + graph.sha(graph.parent1(i)).substring(0, 7));
             }
-            Date time = commit.getTime();
-            System.out.println(String.format("Date: %1$ta"
-                    + " %1$tb %1$te %1$tT %1$tY %1$tz", time));
-            System.out.println(commit.getMessage());
-            System.out.println();
+            out.println("Date: " + LOG_DATE.format(
+                    Instant.ofEpochMilli(time).atZone(zone)));
+            out.println(messages.message(i));
+            out.println();
         }
+        out.flush();
     }
 
     /** find commits with given message.
      * @param message message of the commit you want.*/
     public void find(String message) {
-        boolean found = false;
-        for (String sha : _commitMap) {
-            File f = new File(COMMITS_DIR + sha);
-            Commit commit = Utils.readObject(f, Commit.class);
-            if (commit.getMessage().equals(message)) {
-                System.out.println(sha);
-                found = true;
-            }
+        printFound(MessageIndex.get().find(message));
+    }
+
+    /** find commits whose message starts with a prefix.
+     * @param prefix the start of the message of the commits you want.*/
+    public void findPrefix(String prefix) {
+        printFound(MessageIndex.get().findPrefix(prefix));
+    }
+
+    /** find commits whose message contains a match of a regular
+     *  expression.
+     * @param regex the regular expression.*/
+    public void findRegex(String regex) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException excp) {
+            System.out.println("Invalid regular expression.");
+            return;
         }
-        if (!found) {
+        printFound(MessageIndex.get().findRegex(pattern));
+    }
+
+    /** print the SHAs of commits found by their message.
+     * @param positions positions of the commits in the commit graph.*/
+    private void printFound(ArrayList<Integer> positions) {
+        if (positions.isEmpty()) {
             System.out.println("Found no commit with that message.");
+            return;
+        }
+        CommitGraph graph = CommitGraph.get();
+        for (int i : positions) {
+            System.out.println(graph.sha(i));
         }
     }
 
@@ -161,7 +461,7 @@ public class Gitlet implements Serializable {
     public void statusBranch() {
         System.out.println("=== Branches ===");
         PriorityQueue<String> branches = new PriorityQueue<>();
-        for (String key : _branchMap.keySet()) {
+        for (String key : branches().keySet()) {
             branches.add(key);
         }
         while (!branches.isEmpty()) {
@@ -179,7 +479,7 @@ public class Gitlet implements Serializable {
     public void statusStaged() {
         System.out.println("=== Staged Files ===");
         PriorityQueue<String> stagedFiles = new PriorityQueue<>();
-        for (String key : _stage.getStagedFiles().keySet()) {
+        for (String key : stage().getStagedFiles().keySet()) {
             stagedFiles.add(key);
         }
         while (!stagedFiles.isEmpty()) {
@@ -192,27 +492,37 @@ public class Gitlet implements Serializable {
     /** print removed status.*/
     public void statusRemoved() {
         System.out.println("=== Removed Files ===");
-        Collections.sort(_stage.getMarkedFiles());
-        for (String fileName : _stage.getMarkedFiles()) {
+        Collections.sort(stage().getMarkedFiles());
+        for (String fileName : stage().getMarkedFiles()) {
             System.out.println(fileName);
         }
         System.out.println();
     }
 
-    /** print modified status.*/
+    /** print modified status. tracked files in ignored directories are
+     *  not walked, so they are looked for one by one.*/
     public void statusModified() {
         System.out.println("=== Modifications Not Staged For Commit ===");
         ArrayList<String> modified = new ArrayList<>();
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn("./");
+        HashSet<String> workingDirectoryFiles =
+                new HashSet<>(workingFiles());
         Commit commit = getHead();
         HashMap<String, String> blobs = commit.getBlobs();
+        ArrayList<String> candidates = new ArrayList<>();
         for (String key: blobs.keySet()) {
-            if (!workingDirectoryFiles.contains(key)
-                    && !_stage.getMarkedFiles().contains(key)) {
+            boolean present = workingDirectoryFiles.contains(key)
+                    || new File(key).isFile();
+            if (!present && !stage().getMarkedFiles().contains(key)) {
                 modified.add(key + " (deleted)");
-            } else if (workingDirectoryFiles.contains(key)
-                    && !_stage.getStagedFiles().containsKey(key)
-                    && isModified(key, blobs.get(key))) {
+            } else if (present
+                    && !stage().getStagedFiles().containsKey(key)) {
+                candidates.add(key);
+            }
+        }
+        HashMap<String, ObjectId> ids = stage().workingIds(candidates);
+        for (String key : candidates) {
+            ObjectId id = ids.get(key);
+            if (id == null || !id.matches(blobs.get(key))) {
                 modified.add(key + " (modified)");
             }
         }
@@ -227,8 +537,19 @@ public class Gitlet implements Serializable {
      * @param sha the sha of the commit you want.
      * @return the commit you want.*/
     public static Commit getCommit(String sha) {
-        File f = new File(COMMITS_DIR + sha);
-        return Utils.readObject(f, Commit.class);
+        Commit commit = COMMIT_CACHE.get(sha);
+        if (commit == null) {
+            commit = ObjectStore.readCommit(sha);
+            COMMIT_CACHE.put(sha, commit);
+        }
+        return commit;
+    }
+
+    /** @return hit and miss counts and the size of the commit cache.*/
+    public static String cacheStats() {
+        return String.format("commit cache: %d hits, %d misses, %d cached,"
+                + " weight %d", COMMIT_CACHE.hits(), COMMIT_CACHE.misses(),
+                COMMIT_CACHE.size(), COMMIT_CACHE.weight());
     }
 
     /** get the head commit.
@@ -250,20 +571,20 @@ public class Gitlet implements Serializable {
      * @param sha the sha of the file you want to compare.
      * @return ismodified.*/
     public boolean isModified(String fileName, String sha) {
-        String sha1 = Utils.sha1(getContents(fileName));
-        return !sha1.equals(sha);
+        ObjectId id = stage().workingId(fileName);
+        return id == null || !id.matches(sha);
     }
 
     /** print untracked status.*/
     public void statusUntracked() {
         System.out.println("=== Untracked Files ===");
         ArrayList<String> untracked = new ArrayList<>();
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn("./");
+        List<String> workingDirectoryFiles = workingFiles();
         Commit commit = getHead();
         for (String fileName: workingDirectoryFiles) {
-            if (!_stage.getStagedFiles().containsKey(fileName)
+            if (!stage().getStagedFiles().containsKey(fileName)
                     && !commit.getBlobs().containsKey(fileName)
-                    && !_stage.getMarkedFiles().contains(fileName)) {
+                    && !stage().getMarkedFiles().contains(fileName)) {
                 untracked.add(fileName);
             }
         }
@@ -286,52 +607,46 @@ public class Gitlet implements Serializable {
     /** fast checkout.
      * @param fileName the name of the file you want to checkout*/
     public void checkout(String fileName) {
-        File fcommit = new File(COMMITS_DIR + _head);
-        Commit commit = Utils.readObject(fcommit, Commit.class);
+        fileName = workingPath(fileName);
+        if (fileName == null) {
+            return;
+        }
+        Commit commit = getHead();
         String sha = commit.getFileSHA(fileName);
         if (sha == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
-        File fblob = new File(BLOBS_DIR + sha);
-        byte[] blob = Utils.readContents(fblob);
-        File file = new File(fileName);
-        Utils.writeContents(file, blob);
+        ObjectStore.writeBlobTo(sha, WorkingTree.file(fileName));
+        stage().record(fileName, sha);
     }
 
     /** checkout a given commit.
      * @param commitID the id of the commit you want to checkout.
      * @param fileName the name of the file you want to checkout.*/
     public void checkout(String commitID, String fileName) {
-        boolean isFind = false;
-        for (String key: _commitMap) {
-            if (key.substring(0, commitID.length()).equals(commitID)) {
-                commitID = key;
-                isFind = true;
-                break;
-            }
+        commitID = resolveCommit(commitID);
+        if (commitID == null) {
+            return;
         }
-        if (!isFind) {
-            System.out.println("No commit with that id exists.");
+        fileName = workingPath(fileName);
+        if (fileName == null) {
             return;
         }
-        File fcommit = new File(COMMITS_DIR + commitID);
-        Commit commit = Utils.readObject(fcommit, Commit.class);
+        Commit commit = getCommit(commitID);
         String sha = commit.getFileSHA(fileName);
         if (sha == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
-        File fblob = new File(BLOBS_DIR + sha);
-        byte[] blob = Utils.readContents(fblob);
-        File file = new File(fileName);
-        Utils.writeContents(file, blob);
+        ObjectStore.writeBlobTo(sha, WorkingTree.file(fileName));
+        stage().record(fileName, sha);
     }
 
     /** checkout a branch.
      * @param branchName the name of the branch you want to checkout.*/
     public void checkoutBranch(String branchName) {
-        String branch = _branchMap.get(branchName);
+        String branch = branches().get(branchName);
         if (branch == null) {
             System.out.println("No such branch exists.");
             return;
@@ -341,43 +656,92 @@ public class Gitlet implements Serializable {
             return;
         }
         Commit commit = getCommit(branch);
-        HashMap<String, String> branchBlobs = commit.getBlobs();
-
-        Commit commitHead = getHead();
-        HashMap<String, String> headBlobs = commitHead.getBlobs();
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn("./");
-        if (isUntracked(commit)) {
+        if (isUntracked(commit) || !checkoutTree(commit).isEmpty()) {
             return;
         }
+        changeStage().clear();
+        stage().setHead(commit);
+        _head = branch;
+        _branch = branchName;
+        _branchChanged = true;
+    }
 
-        HashMap<String, String> blobs = commit.getBlobs();
-        for (String key: blobs.keySet()) {
-            String blobID = blobs.get(key);
-            File fblob = new File(BLOBS_DIR + blobID);
-            byte[] blob = Utils.readContents(fblob);
-            File file = new File(key);
-            Utils.writeContents(file, blob);
+    /** make the working directory match a commit, which must not be in
+     *  the way of untracked files. the trees of head and the commit are
+     *  compared first: only files whose version differs, or whose working
+     *  copy differs from the commit, are written, and only files tracked
+     *  by head or staged but not in the commit are deleted, before any
+     *  file is written so that a directory may replace a file. working
+     *  copies of unchanged files are checked by their stat data, and
+     *  files are written by a CheckoutWriter. if some files cannot be
+     *  written, the others are still written and the errors are printed,
+     *  and the caller must not move head: checking out the same commit
+     *  again only writes what is still missing.
+     * @param target the commit.
+     * @return the files that could not be written. key: file name,
+     *  val: the error.*/
+    private TreeMap<String, String> checkoutTree(Commit target) {
+        HashMap<String, String> targetBlobs = target.getBlobs();
+        ArrayList<String> differ = new ArrayList<>();
+        Tree.diff(getHead().tree(), target.tree(), "", differ);
+        HashSet<String> tracked = new HashSet<>();
+        ArrayList<String> changed = new ArrayList<>();
+        for (String fileName : differ) {
+            if (targetBlobs.containsKey(fileName)) {
+                changed.add(fileName);
+            } else {
+                tracked.add(fileName);
+            }
         }
-
-        for (String fileName: workingDirectoryFiles) {
-            if (!blobs.keySet().contains(fileName)) {
-                Utils.restrictedDelete(fileName);
+        HashSet<String> differSet = new HashSet<>(differ);
+        ArrayList<String> unchanged = new ArrayList<>();
+        for (String fileName : targetBlobs.keySet()) {
+            if (!differSet.contains(fileName)) {
+                unchanged.add(fileName);
             }
         }
-        _stage.clear();
-        _stage.setHead(commit);
-        _head = branch;
-        _branch = branchName;
+        HashMap<String, ObjectId> working = stage().workingIds(unchanged);
+        for (String fileName : unchanged) {
+            ObjectId id = working.get(fileName);
+            if (id == null || !id.matches(targetBlobs.get(fileName))) {
+                changed.add(fileName);
+            }
+        }
+        tracked.addAll(stage().getStagedFiles().keySet());
+        for (String fileName : tracked) {
+            if (!targetBlobs.containsKey(fileName)) {
+                WorkingTree.delete(fileName);
+            }
+        }
+        TreeMap<String, String> errors =
+                CheckoutWriter.write(changed, targetBlobs);
+        for (String fileName : changed) {
+            if (!errors.containsKey(fileName)) {
+                stage().record(fileName, targetBlobs.get(fileName));
+            }
+        }
+        for (String fileName : errors.keySet()) {
+            System.out.println("Could not write " + fileName + ": "
+                    + errors.get(fileName));
+        }
+        return errors;
+    }
+
+    /** move all loose objects into a pack, and fold the log of the
+     *  message index into its file.*/
+    public void repack() {
+        ObjectStore.repack();
+        MessageIndex.get().compact();
     }
 
     /** make a new branch.
      * @param branchName the name of the new branch*/
     public void branch(String branchName) {
-        if (_branchMap.get(branchName) != null) {
+        if (branches().get(branchName) != null) {
             System.out.println("branch with that name already exists.");
             return;
         }
-        _branchMap.put(branchName, _head);
+        setBranch(branchName, _head);
     }
 
     /** remove a branch.
@@ -387,48 +751,29 @@ public class Gitlet implements Serializable {
             System.out.println("Cannot remove the current branch.");
             return;
         }
-        if (_branchMap.remove(branchName) == null) {
+        if (!branches().containsKey(branchName)) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
+        setBranch(branchName, null);
     }
 
     /** reset to a commit.
      * @param commitID the id of the commit you want to checkout.*/
     public void reset(String commitID) {
-        if (!_commitMap.contains(commitID)) {
-            System.out.println("No commit with that id exists.");
+        commitID = resolveCommit(commitID);
+        if (commitID == null) {
             return;
         }
 
         Commit commit = getCommit(commitID);
-        HashMap<String, String> branchBlobs = commit.getBlobs();
-
-        Commit commitHead = getHead();
-        HashMap<String, String> headBlobs = commitHead.getBlobs();
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn("./");
-        if (isUntracked(commit)) {
+        if (isUntracked(commit) || !checkoutTree(commit).isEmpty()) {
             return;
         }
-
-        HashMap<String, String> blobs = commit.getBlobs();
-        for (String key: blobs.keySet()) {
-            String blobID = blobs.get(key);
-            File fblob = new File(BLOBS_DIR + blobID);
-            byte[] blob = Utils.readContents(fblob);
-            File file = new File(key);
-            Utils.writeContents(file, blob);
-        }
-
-        for (String fileName: workingDirectoryFiles) {
-            if (branchBlobs.get(fileName) == null) {
-                Utils.restrictedDelete(fileName);
-            }
-        }
-        _stage.clear();
-        _stage.setHead(commit);
+        changeStage().clear();
+        stage().setHead(commit);
         _head = commitID;
-        _branchMap.put(_branch, commitID);
+        setBranch(_branch, commitID);
     }
 
     /** check if there is any file is untracked.
@@ -438,10 +783,10 @@ public class Gitlet implements Serializable {
         Commit current = getHead();
         HashMap headBlobs = current.getBlobs();
         HashMap givenBlobs = given.getBlobs();
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn("./");
+        List<String> workingDirectoryFiles = workingFiles();
         for (String fileName: workingDirectoryFiles) {
             if (!headBlobs.containsKey(fileName)
-                    && !_stage.getStagedFiles().containsKey(fileName)) {
+                    && !stage().getStagedFiles().containsKey(fileName)) {
                 System.out.println("There is an untracked file in the way;"
                         + " delete it or add it first.");
                 return true;
@@ -454,11 +799,11 @@ public class Gitlet implements Serializable {
      * @param branchName the given branch.
      * @return if there is an error.*/
     public boolean isErrorMessage(String branchName) {
-        if (!_stage.isClear()) {
+        if (!stage().isClear()) {
             System.out.println("You have uncommitted changes.");
             return true;
         }
-        if (!_branchMap.containsKey(branchName)) {
+        if (!branches().containsKey(branchName)) {
             System.out.println("A branch with that name does not exist.");
             return true;
         }
@@ -466,18 +811,18 @@ public class Gitlet implements Serializable {
             System.out.println("Cannot merge a branch with itself.");
             return true;
         }
-        Commit current = getHead();
-        Commit given = getCommit(_branchMap.get(branchName));
-        Commit splitPoint = splitPoint(current, given);
+        CommitGraph graph = CommitGraph.get();
+        int current = graph.position(_head);
+        int given = graph.position(branches().get(branchName));
 
-        if (given.equals(splitPoint)) {
+        if (graph.isAncestor(given, current)) {
             System.out.println("Given branch is an ancestor"
                     + " of the current branch.");
             return true;
         }
-        if (current.equals(splitPoint)) {
-            _head = given.getSHA();
-            _branchMap.put(_branch, _head);
+        if (graph.isAncestor(current, given)) {
+            _head = branches().get(branchName);
+            setBranch(_branch, _head);
             System.out.println("Current branch fast-forwarded.");
             return true;
         }
@@ -488,19 +833,23 @@ public class Gitlet implements Serializable {
      * @param fileName the file's name.
      * @param givenFileSHA the sha of the given file.*/
     public void write(String fileName, String givenFileSHA) {
-        File file = new File(fileName);
-        File givenFile = new File(BLOBS_DIR + givenFileSHA);
-        Utils.writeContents(file, Utils.readContents(givenFile));
+        ObjectStore.writeBlobTo(givenFileSHA, WorkingTree.file(fileName));
         add(fileName);
     }
 
+    /** get contents of the given blob as a string.
+     * @param sha the sha of the blob.
+     * @return contents of this blob.*/
+    public String readBlobAsString(String sha) {
+        return new String(ObjectStore.readBlob(sha), StandardCharsets.UTF_8);
+    }
+
     /** write the contents of conflict into working directory.
      * @param fileName the file's name.
      * @param givenFileSHA the sha of the given file.*/
     public void writeConflict1(String fileName, String givenFileSHA) {
-        File workingFile = new File(fileName);
-        File givenFile = new File(BLOBS_DIR + givenFileSHA);
-        String givenContents = Utils.readContentsAsString(givenFile);
+        File workingFile = WorkingTree.file(fileName);
+        String givenContents = readBlobAsString(givenFileSHA);
         Utils.writeContents(workingFile, "<<<<<<< HEAD"
                 + System.lineSeparator()
                 + "=======" + System.lineSeparator() + givenContents
@@ -515,11 +864,9 @@ public class Gitlet implements Serializable {
     public void writeConflict2(String fileName,
                                String currFileSHA,
                                String givenFileSHA) {
-        File workingFile = new File(fileName);
-        File currFile = new File(BLOBS_DIR + currFileSHA);
-        File givenFile = new File(BLOBS_DIR + givenFileSHA);
-        String currContents = Utils.readContentsAsString(currFile);
-        String givenContents = Utils.readContentsAsString(givenFile);
+        File workingFile = WorkingTree.file(fileName);
+        String currContents = readBlobAsString(currFileSHA);
+        String givenContents = readBlobAsString(givenFileSHA);
         Utils.writeContents(workingFile, "<<<<<<< HEAD\n"
                 + currContents + "=======\n" + givenContents
                 + ">>>>>>>\n");
@@ -530,9 +877,8 @@ public class Gitlet implements Serializable {
      * @param fileName the file's name.
      * @param currFileSHA the sha of the given file.*/
     public void writeConflict3(String fileName, String currFileSHA) {
-        File workingFile = new File(fileName);
-        File currFile = new File(BLOBS_DIR + currFileSHA);
-        String currContents = Utils.readContentsAsString(currFile);
+        File workingFile = WorkingTree.file(fileName);
+        String currContents = readBlobAsString(currFileSHA);
         Utils.writeContents(workingFile, "<<<<<<< HEAD"
                 + System.lineSeparator()
                 + currContents + "=======" + System.lineSeparator()
@@ -601,8 +947,9 @@ public class Gitlet implements Serializable {
         if (isErrorMessage(branchName)) {
             return;
         }
-        Commit given = getCommit(_branchMap.get(branchName));
-        Commit splitPoint = splitPoint(getHead(), given);
+        Commit given = getCommit(branches().get(branchName));
+        Commit splitPoint = getCommit(splitPoint(_head,
+                branches().get(branchName)));
         HashMap<String, String> currBlobs = getHead().getBlobs();
         HashMap<String, String> givenBlobs = given.getBlobs();
         HashMap<String, String> splitBlobs = splitPoint.getBlobs();
@@ -650,9 +997,9 @@ public class Gitlet implements Serializable {
                 isConflict = true;
             }
         }
-        String parent1 = _branchMap.get(branchName).substring(0, 7);
+        String parent1 = branches().get(branchName);
         mergeCommit("Merged " + branchName + " into " + _branch + ".",
-                parent1, _head.substring(0, 7));
+                parent1, _head);
         if (isConflict) {
             System.out.println("Encountered a merge conflict.");
         }
@@ -663,19 +1010,24 @@ public class Gitlet implements Serializable {
      * @param given the given commit.
      * @return the split point.*/
     public static Commit splitPoint(Commit current, Commit given) {
-        /*if (given == null) {
-            return current;
-        }*/
-        int len = current.length() - given.length();
-        if (len < 0) {
-            given = given.shorten(-len);
-        } else {
-            current = current.shorten(len);
+        if (current.equals(given)) {
+            return given;
         }
-        while (!current.equals(given)) {
-            current = getCommit(current.getParent());
-            given = getCommit(given.getParent());
+        return getCommit(splitPoint(current.getSHA(), given.getSHA()));
+    }
+
+    /** get the split point of two commits: their best merge base in the
+     *  commit graph, following both parents of merge commits.
+     * @param current the sha of the current commit.
+     * @param given the sha of the given commit.
+     * @return the sha of the split point.*/
+    public static String splitPoint(String current, String given) {
+        CommitGraph graph = CommitGraph.get();
+        int base = MergeBase.best(graph, graph.position(current),
+                graph.position(given));
+        if (base < 0) {
+            throw Utils.error("No common ancestor.");
         }
-        return given;
+        return graph.sha(base);
     }
 }
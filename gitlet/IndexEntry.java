@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/** Stat data of a working file together with the SHA of its contents.
+ *  An entry is up to date when the size, modification time and file key
+ *  of the file are unchanged since it was recorded, so the file does not
+ *  have to be read and hashed again.
+ *
+ *  A file changed twice within the resolution of its modification time
+ *  keeps the same stat data. Entries recorded less than RACY_MILLIS after
+ *  the file was modified are therefore "racily clean" and never trusted.
+ *  @author Henry Xu
+ */
+class IndexEntry {
+
+    /** how long after a modification an entry is not trusted.*/
+    static final long RACY_MILLIS = 1000;
+
+    /** size of the file.*/
+    private long _size;
+    /** modification time of the file in nanoseconds.*/
+    private long _mtime;
+    /** file key of the file (device and inode), or "".*/
+    private String _fileKey;
+    /** id of the contents of the file, kept raw so that the index is
+     *  read and working files are compared without hexadecimal.*/
+    private ObjectId _id;
+    /** when this entry was recorded in milliseconds.*/
+    private long _checkedAt;
+
+    /** make an entry.
+     * @param size size of the file.
+     * @param mtime modification time of the file in nanoseconds.
+     * @param fileKey file key of the file.
+     * @param id id of the contents of the file, or null.
+     * @param checkedAt when this entry was recorded.*/
+    IndexEntry(long size, long mtime, String fileKey, ObjectId id,
+               long checkedAt) {
+        _size = size;
+        _mtime = mtime;
+        _fileKey = fileKey;
+        _id = id;
+        _checkedAt = checkedAt;
+    }
+
+    /** @param file a file.
+     * @return the current stat data of FILE, without a SHA.*/
+    static IndexEntry stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            Object key = attrs.fileKey();
+            return new IndexEntry(attrs.size(),
+                    attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    key == null ? "" : key.toString(), null,
+                    System.currentTimeMillis());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @param id the id of the contents of the file.
+     * @return this stat data with ID.*/
+    IndexEntry withId(ObjectId id) {
+        return new IndexEntry(_size, _mtime, _fileKey, id, _checkedAt);
+    }
+
+    /** @param sha the SHA of the contents of the file.
+     * @return this stat data with SHA.*/
+    IndexEntry withSHA(String sha) {
+        return withId(ObjectId.fromHex(sha));
+    }
+
+    /** @param current the current stat data of the file.
+     * @return if the SHA of this entry is still the SHA of the file.*/
+    boolean isUpToDate(IndexEntry current) {
+        return _size == current._size && _mtime == current._mtime
+                && _fileKey.equals(current._fileKey)
+                && TimeUnit.NANOSECONDS.toMillis(_mtime) + RACY_MILLIS
+                < _checkedAt;
+    }
+
+    /** @return the id of the contents of the file.*/
+    ObjectId getId() {
+        return _id;
+    }
+
+    /** @return the SHA of the contents of the file.*/
+    String getSHA() {
+        return _id.toHex();
+    }
+
+    /** write this entry.
+     * @param out the index being written.*/
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(_size);
+        out.writeLong(_mtime);
+        out.writeUTF(_fileKey);
+        out.write(_id.toRaw());
+        out.writeLong(_checkedAt);
+    }
+
+    /** read an entry.
+     * @param in the index being read.
+     * @return the entry.*/
+    static IndexEntry read(DataInputStream in) throws IOException {
+        long size = in.readLong();
+        long mtime = in.readLong();
+        String fileKey = in.readUTF();
+        byte[] id = new byte[ObjectId.LENGTH];
+        in.readFully(id);
+        return new IndexEntry(size, mtime, fileKey, ObjectId.fromRaw(id, 0),
+                in.readLong());
+    }
+}
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import static gitlet.Gitlet.*;
+
+/** A repository of the format gitlet had before HEAD, refs and the index:
+ *  the whole state in LEGACY_PATH, a Java serialized Gitlet holding the
+ *  commit list, the branches, the head and a Stage with the contents of
+ *  the staged files. Its commits and blobs are read where they are, so
+ *  only that file is converted, once, by the first command run in the
+ *  repository. The classes it names are read into State and LegacyStage,
+ *  which have the fields and serialVersionUIDs Gitlet and Stage had.
+ *  @author Henry Xu
+ */
+class LegacyRepository {
+
+    /** the path of the state of an old repository.*/
+    static final String LEGACY_PATH = ".gitlet/gitlet";
+
+    /** convert the repository in the current directory if it is of the
+     *  old format. the new files are written before the old one is
+     *  deleted, and HEAD last of them, so a conversion that stops
+     *  partway is done again. prints why if it cannot be converted.
+     * @return if there is a repository of the current format now.*/
+    static boolean migrate() {
+        File legacy = new File(LEGACY_PATH);
+        if (!legacy.isFile()) {
+            return false;
+        }
+        RepoLock lock = RepoLock.acquire();
+        try (lock) {
+            if (new File(HEAD_PATH).exists()) {
+                return true;
+            }
+            State state = read(legacy);
+            if (state == null) {
+                return false;
+            }
+            new File(TREES_DIR).mkdirs();
+            new File(ObjectStore.PACKS_DIR).mkdirs();
+            new File(REFS_DIR).mkdirs();
+            for (Map.Entry<String, String> branch
+                    : state._branchMap.entrySet()) {
+                Utils.writeContents(new File(REFS_DIR + branch.getKey()),
+                        branch.getValue());
+            }
+            HashMap<String, String> staged = new HashMap<>();
+            for (Map.Entry<String, byte[]> file
+                    : state._stage._stagedFiles.entrySet()) {
+                String sha = Utils.sha1(file.getValue());
+                ObjectStore.writeBlob(sha, file.getValue(), null);
+                staged.put(file.getKey(), sha);
+            }
+            new Stage(staged, state._stage._markedFiles)
+                    .write(new File(INDEX_PATH));
+            Utils.writeContents(new File(COMMIT_LIST_PATH),
+                    String.join("\n", state._commitMap) + "\n");
+            CommitGraph.reset();
+            CommitGraph.get();
+            Utils.writeContents(new File(HEAD_PATH), state._branch);
+            legacy.delete();
+        }
+        return true;
+    }
+
+    /** @param legacy the state of an old repository.
+     * @return the state, or null if it cannot be read.*/
+    private static State read(File legacy) {
+        try (ObjectInputStream in = new LegacyInput(new BufferedInputStream(
+                Files.newInputStream(legacy.toPath())))) {
+            return (State) in.readObject();
+        } catch (IOException | ClassNotFoundException
+                 | ClassCastException excp) {
+            System.out.println("Cannot read the repository of the old"
+                    + " format in " + LEGACY_PATH + ": " + excp.getMessage());
+            return null;
+        }
+    }
+
+    /** the state of an old repository, as Gitlet had it.*/
+    private static class State implements Serializable {
+        /** the serialVersionUID of Gitlet then.*/
+        private static final long serialVersionUID = 8197451432754852869L;
+        /** SHAs of all commits, in the order they were made.*/
+        private ArrayList<String> _commitMap;
+        /** key: branch name, val: SHA of commit.*/
+        private HashMap<String, String> _branchMap;
+        /** the stage.*/
+        private LegacyStage _stage;
+        /** the SHA of the head commit.*/
+        private String _head;
+        /** the name of the current branch.*/
+        private String _branch;
+    }
+
+    /** the stage of an old repository, as Stage had it.*/
+    private static class LegacyStage implements Serializable {
+        /** the serialVersionUID of Stage then.*/
+        private static final long serialVersionUID = 6514761680681060196L;
+        /** key: file name, val: the contents staged.*/
+        private HashMap<String, byte[]> _stagedFiles;
+        /** files marked to be removed.*/
+        private ArrayList<String> _markedFiles;
+        /** the head commit.*/
+        private Commit _head;
+    }
+
+    /** reads the old Gitlet and Stage into State and LegacyStage. their
+     *  fields are the same, so the local descriptors of those classes
+     *  describe the stream too.*/
+    private static class LegacyInput extends ObjectInputStream {
+
+        /** @param in the state of an old repository.
+         * @throws IOException if it has no stream header.*/
+        LegacyInput(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+                throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> local;
+            if (desc.getName().equals(Gitlet.class.getName())) {
+                local = State.class;
+            } else if (desc.getName().equals(Stage.class.getName())) {
+                local = LegacyStage.class;
+            } else {
+                return desc;
+            }
+            ObjectStreamClass result = ObjectStreamClass.lookup(local);
+            if (result.getSerialVersionUID()
+                    != desc.getSerialVersionUID()) {
+                throw new InvalidClassException(desc.getName(),
+                        "unknown version of the old format");
+            }
+            return result;
+        }
+    }
+}
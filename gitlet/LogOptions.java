@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Options of the log and global-log commands.
+ *  Usage: [--max-count N] [--since DATE] [--until DATE] [--oneline]
+ *  [^REV ...] [-- FILE ...], where DATE is yyyy-mm-dd or
+ *  yyyy-mm-ddThh:mm:ss in local time. A bare date given to --until
+ *  includes the whole day. ^REV skips the commits reachable from a branch
+ *  or commit id, and FILEs limit log to commits that change them; only
+ *  log takes these two.
+ *  @author Henry Xu
+ */
+class LogOptions {
+
+    /** most commits to print.*/
+    private int _maxCount = Integer.MAX_VALUE;
+    /** earliest commit time to print, in milliseconds.*/
+    private long _since = Long.MIN_VALUE;
+    /** latest commit time to print, in milliseconds.*/
+    private long _until = Long.MAX_VALUE;
+    /** if each commit is printed on one line.*/
+    private boolean _oneline;
+    /** branches or commit ids whose history is skipped.*/
+    private ArrayList<String> _excludes = new ArrayList<>();
+    /** files that printed commits must change, or empty for all.*/
+    private ArrayList<String> _paths = new ArrayList<>();
+
+    /** @param args the command user put in.
+     * @return the options in ARGS after the command name, or null if
+     *  they are not valid.*/
+    static LogOptions parse(String... args) {
+        LogOptions options = new LogOptions();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].startsWith("^") && args[i].length() > 1) {
+                    options._excludes.add(args[i].substring(1));
+                    continue;
+                }
+                switch (args[i]) {
+                case "--oneline":
+                    options._oneline = true;
+                    break;
+                case "--max-count":
+                case "-n":
+                    options._maxCount = Integer.parseInt(args[++i]);
+                    if (options._maxCount < 0) {
+                        return null;
+                    }
+                    break;
+                case "--since":
+                    options._since = parseTime(args[++i], false);
+                    break;
+                case "--until":
+                    options._until = parseTime(args[++i], true);
+                    break;
+                case "--":
+                    options._paths.addAll(
+                            Arrays.asList(args).subList(i + 1, args.length));
+                    i = args.length;
+                    break;
+                default:
+                    return null;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException
+                | DateTimeParseException excp) {
+            return null;
+        }
+        return options;
+    }
+
+    /** @param text a date or a date and time.
+     * @param endOfDay if a bare date means the end of that day.
+     * @return the time in milliseconds.*/
+    private static long parseTime(String text, boolean endOfDay) {
+        ZoneId zone = ZoneId.systemDefault();
+        if (text.indexOf('T') >= 0) {
+            return LocalDateTime.parse(text).atZone(zone)
+                    .toInstant().toEpochMilli();
+        }
+        LocalDate date = LocalDate.parse(text);
+        if (endOfDay) {
+            date = date.plusDays(1);
+        }
+        long start = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        return endOfDay ? start - 1 : start;
+    }
+
+    /** @return most commits to print.*/
+    int maxCount() {
+        return _maxCount;
+    }
+
+    /** @return earliest commit time to print, in milliseconds.*/
+    long since() {
+        return _since;
+    }
+
+    /** @return latest commit time to print, in milliseconds.*/
+    long until() {
+        return _until;
+    }
+
+    /** @return if each commit is printed on one line.*/
+    boolean oneline() {
+        return _oneline;
+    }
+
+    /** @return branches or commit ids whose history is skipped.*/
+    ArrayList<String> excludes() {
+        return _excludes;
+    }
+
+    /** @return files that printed commits must change, or empty for
+     *  all.*/
+    ArrayList<String> paths() {
+        return _paths;
+    }
+}
@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A cache that keeps the most recently used values, bounded by a number
+ *  of entries and optionally by a total weight. It counts hits and misses.
+ *  @param <K> type of keys.
+ *  @param <V> type of values.
+ *  @author Henry Xu
+ */
+class LruCache<K, V> {
+
+    /** entries from least to most recently used.*/
+    private LinkedHashMap<K, V> _map;
+    /** maximum number of entries.*/
+    private int _maxEntries;
+    /** maximum total weight, or 0 if unbounded.*/
+    private long _maxWeight;
+    /** weight of a value.*/
+    private Utils.Function<V, Integer> _weigher;
+    /** key: a cached key, val: the weight of its value when it was put.
+     *  weights can change while a value is cached, so the weight it was
+     *  counted with is the one taken back out.*/
+    private HashMap<K, Long> _weights;
+    /** total weight of all values.*/
+    private long _weight;
+    /** number of lookups that found a value.*/
+    private long _hits;
+    /** number of lookups that found nothing.*/
+    private long _misses;
+
+    /** make a cache bounded by number of entries only.
+     * @param maxEntries maximum number of entries.*/
+    LruCache(int maxEntries) {
+        this(maxEntries, 0, null);
+    }
+
+    /** make a cache.
+     * @param maxEntries maximum number of entries.
+     * @param maxWeight maximum total weight, or 0 if unbounded.
+     * @param weigher weight of a value, or null if MAXWEIGHT is 0.*/
+    LruCache(int maxEntries, long maxWeight,
+             Utils.Function<V, Integer> weigher) {
+        _map = new LinkedHashMap<>(16, 0.75f, true);
+        _weights = new HashMap<>();
+        _maxEntries = maxEntries;
+        _maxWeight = maxWeight;
+        _weigher = weigher;
+    }
+
+    /** @param key a key.
+     * @return the value of KEY, or null if it is not cached.*/
+    V get(K key) {
+        V value = _map.get(key);
+        if (value == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return value;
+    }
+
+    /** cache a value, evicting the least recently used ones if needed.
+     * @param key a key.
+     * @param value its value.*/
+    void put(K key, V value) {
+        _map.put(key, value);
+        long weight = weigh(value);
+        Long old = _weights.put(key, weight);
+        if (old != null) {
+            _weight -= old;
+        }
+        _weight += weight;
+        Iterator<K> eldest = _map.keySet().iterator();
+        while (eldest.hasNext() && (_map.size() > _maxEntries
+                || _maxWeight > 0 && _weight > _maxWeight
+                && _map.size() > 1)) {
+            _weight -= _weights.remove(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /** @return number of cached values.*/
+    int size() {
+        return _map.size();
+    }
+
+    /** @return total weight of the cached values, as they were put.*/
+    long weight() {
+        return _weight;
+    }
+
+    /** @return number of lookups that found a value.*/
+    long hits() {
+        return _hits;
+    }
+
+    /** @return number of lookups that found nothing.*/
+    long misses() {
+        return _misses;
+    }
+
+    /** @param value a value.
+     * @return its weight.*/
+    private long weigh(V value) {
+        return _weigher == null ? 0 : _weigher.apply(value);
+    }
+}
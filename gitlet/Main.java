@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.File;
+import java.util.Arrays;
 import static gitlet.Gitlet.*;
 import static gitlet.Utils.*;
 /** Driver class for Gitlet, the tiny stupid version-control system.
@@ -11,12 +12,16 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     static final String GITLET_DIR = ".gitlet/";
-    /** the path of gitlet.*/
-    static final String GITLET_PATH = ".gitlet/gitlet";
+    /** the path of the name of the current branch.*/
+    static final String HEAD_PATH = ".gitlet/HEAD";
     /** the path of all commits.*/
     static final String COMMITS_DIR = ".gitlet/commits/";
     /** the path of all blobs.*/
     static final String BLOBS_DIR = ".gitlet/blobs/";
+    /** the path of all trees.*/
+    static final String TREES_DIR = ".gitlet/trees/";
+    /** the path of all packs.*/
+    static final String PACKS_DIR = ".gitlet/packs/";
 
     /** initialize the program and make directory.*/
     public static void initCommand() {
@@ -31,15 +36,32 @@ public class Main {
         fcommits.mkdirs();
         File fblobs = new File(BLOBS_DIR);
         fblobs.mkdirs();
+        File ftrees = new File(TREES_DIR);
+        ftrees.mkdirs();
+        File fpacks = new File(PACKS_DIR);
+        fpacks.mkdirs();
         Gitlet gitlet = new Gitlet();
         saveGitlet(gitlet);
     }
 
-    /** save the situation after running a command.
+    /** @return if the current directory has a repository, after
+     *  converting it if it is of the old format. prints why if not.*/
+    static boolean isInitialized() {
+        if (new File(HEAD_PATH).exists()) {
+            return true;
+        }
+        if (new File(LegacyRepository.LEGACY_PATH).isFile()) {
+            return LegacyRepository.migrate();
+        }
+        System.out.println("Not in an initialized Gitlet directory.");
+        return false;
+    }
+
+    /** save the situation after running a command. only the parts
+     *  changed by the command are written.
      * @param gitlet current gitlet to be save*/
     public static void saveGitlet(Gitlet gitlet) {
-        File f = new File(GITLET_PATH);
-        writeObject(f, gitlet);
+        gitlet.save();
     }
 
     /** main method.
@@ -53,43 +75,60 @@ public class Main {
         if (command.equals("init")) {
             initCommand();
         } else {
-            File f = new File(GITLET_PATH);
-            if (!f.exists()) {
-                System.out.println("Not in an initialized"
-                        + " Gitlet directory.");
+            if (!isInitialized()) {
                 return;
             }
-            Gitlet gitlet = Utils.readObject(f, Gitlet.class);
-            switch (command) {
-            case "add":
-                addComand(gitlet, args); break;
-            case "commit":
-                commitComand(gitlet, args); break;
-            case "rm":
-                rmComand(gitlet, args); break;
-            case "log":
-                logCommand(gitlet, args); break;
-            case "global-log":
-                globalLogCommand(gitlet, args); break;
-            case "find":
-                findCommand(gitlet, args); break;
-            case "status":
-                statusCommand(gitlet, args); break;
-            case "checkout":
-                checkoutCommand(gitlet, args); break;
-            case "branch":
-                branchCommand(gitlet, args); break;
-            case "rm-branch":
-                rmBranchCommand(gitlet, args); break;
-            case "reset":
-                resetCommand(gitlet, args); break;
-            case "merge":
-                mergeCommand(gitlet, args); break;
-            default:
-                System.out.println("No command with that name exists.");
-                break;
+            if (command.equals("daemon")) {
+                daemonCommand(args);
+            } else {
+                RepoLock lock = RepoLock.acquire();
+                try (lock) {
+                    Gitlet gitlet = Gitlet.load();
+                    run(gitlet, args);
+                    saveGitlet(gitlet);
+                }
             }
-            saveGitlet(gitlet);
+        }
+        if (Boolean.getBoolean("gitlet.stats")) {
+            System.err.println(Gitlet.cacheStats());
+        }
+    }
+
+    /** run a command other than init and daemon. the caller holds the
+     *  RepoLock and saves GITLET afterwards.
+     * @param gitlet current gitlet
+     * @param args the command user put in*/
+    static void run(Gitlet gitlet, String... args) {
+        switch (args[0]) {
+        case "add":
+            addComand(gitlet, args); break;
+        case "commit":
+            commitComand(gitlet, args); break;
+        case "rm":
+            rmComand(gitlet, args); break;
+        case "log":
+            logCommand(gitlet, args); break;
+        case "global-log":
+            globalLogCommand(gitlet, args); break;
+        case "find":
+            findCommand(gitlet, args); break;
+        case "status":
+            statusCommand(gitlet, args); break;
+        case "checkout":
+            checkoutCommand(gitlet, args); break;
+        case "branch":
+            branchCommand(gitlet, args); break;
+        case "rm-branch":
+            rmBranchCommand(gitlet, args); break;
+        case "reset":
+            resetCommand(gitlet, args); break;
+        case "merge":
+            mergeCommand(gitlet, args); break;
+        case "repack":
+            repackCommand(gitlet, args); break;
+        default:
+            System.out.println("No command with that name exists.");
+            break;
         }
     }
 
@@ -97,11 +136,15 @@ public class Main {
      * @param args the command user put in
      * @param gitlet current gitlet*/
     static void addComand(Gitlet gitlet, String...args) {
-        if (args.length != 2) {
+        if (args.length < 2) {
             System.out.println("Incorrect operands.");
             return;
         }
-        gitlet.add(args[1]);
+        if (args.length == 2) {
+            gitlet.add(args[1]);
+        } else {
+            gitlet.add(Arrays.asList(args).subList(1, args.length));
+        }
     }
 
     /** commit command method.
@@ -132,31 +175,38 @@ public class Main {
      * @param args the command user put in
      * @param gitlet current gitlet*/
     static void logCommand(Gitlet gitlet, String...args) {
-        if (args.length != 1) {
+        LogOptions options = LogOptions.parse(args);
+        if (options == null) {
             System.out.println("Incorrect operands.");
             return;
         }
-        gitlet.log();
+        gitlet.log(options);
     }
     /** global-log command method.
      * @param args the command user put in
      * @param gitlet current gitlet*/
     static void globalLogCommand(Gitlet gitlet, String...args) {
-        if (args.length != 1) {
+        LogOptions options = LogOptions.parse(args);
+        if (options == null || !options.excludes().isEmpty()
+                || !options.paths().isEmpty()) {
             System.out.println("Incorrect operands.");
             return;
         }
-        gitlet.globalLog();
+        gitlet.globalLog(options);
     }
     /** find command method.
      * @param args the command user put in
      * @param gitlet current gitlet*/
     static void findCommand(Gitlet gitlet, String...args) {
-        if (args.length != 2) {
+        if (args.length == 2) {
+            gitlet.find(args[1]);
+        } else if (args.length == 3 && args[1].equals("--prefix")) {
+            gitlet.findPrefix(args[2]);
+        } else if (args.length == 3 && args[1].equals("--regex")) {
+            gitlet.findRegex(args[2]);
+        } else {
             System.out.println("Incorrect operands.");
-            return;
         }
-        gitlet.find(args[1]);
     }
     /** status command method.
      * @param args the command user put in
@@ -231,4 +281,23 @@ public class Main {
         }
         gitlet.merge(args[1]);
     }
+    /** daemon command method.
+     * @param args the command user put in*/
+    static void daemonCommand(String...args) {
+        if (args.length != 1) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Daemon.serve();
+    }
+    /** repack command method.
+     * @param args the command user put in
+     * @param gitlet current gitlet*/
+    static void repackCommand(Gitlet gitlet, String...args) {
+        if (args.length != 1) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        gitlet.repack();
+    }
 }
@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/** Merge bases of two commits in a CommitGraph.
+ *  Walks back from both commits at once in order of decreasing generation,
+ *  following both parents of merges. Every commit is painted with the
+ *  side(s) it is reachable from; a commit reached from both sides is a
+ *  common ancestor, and its own ancestors are painted STALE since they
+ *  cannot be better. The walk stops once only stale commits are left in
+ *  the queue. A commit whose paint changes is queued again.
+ *  Commits are compared by their positions in the graph.
+ *  @author Henry Xu
+ */
+class MergeBase {
+
+    /** reachable from the first commit.*/
+    private static final int SIDE1 = 1;
+    /** reachable from the second commit.*/
+    private static final int SIDE2 = 2;
+    /** ancestor of a common ancestor.*/
+    private static final int STALE = 4;
+    /** already a result.*/
+    private static final int RESULT = 8;
+
+    /** find the best common ancestors of two commits: the ones that are
+     *  not ancestors of other common ancestors. there are several after
+     *  criss-cross merges.
+     * @param graph the commit graph.
+     * @param a position of a commit.
+     * @param b position of another commit.
+     * @return positions of the merge bases, highest generation first.*/
+    static ArrayList<Integer> all(CommitGraph graph, int a, int b) {
+        ArrayList<Integer> result = new ArrayList<>();
+        if (a == b) {
+            result.add(a);
+            return result;
+        }
+        int[] flags = new int[graph.size()];
+        PriorityQueue<int[]> queue = new PriorityQueue<>(
+            (x, y) -> {
+                int cmp = Integer.compare(graph.generation(y[0]),
+                        graph.generation(x[0]));
+                if (cmp == 0) {
+                    cmp = Long.compare(graph.time(y[0]), graph.time(x[0]));
+                }
+                return cmp != 0 ? cmp : Integer.compare(y[0], x[0]);
+            });
+        flags[a] |= SIDE1;
+        flags[b] |= SIDE2;
+        queue.add(new int[] {a, 1});
+        queue.add(new int[] {b, 1});
+        int active = 2;
+        while (active > 0) {
+            int[] entry = queue.remove();
+            int c = entry[0];
+            active -= entry[1];
+            int paint = flags[c] & (SIDE1 | SIDE2 | STALE);
+            if (paint == (SIDE1 | SIDE2)) {
+                if ((flags[c] & RESULT) == 0) {
+                    flags[c] |= RESULT;
+                    result.add(c);
+                }
+                paint |= STALE;
+            }
+            for (int p : new int[] {graph.parent1(c), graph.parent2(c)}) {
+                if (p < 0 || (flags[p] & paint) == paint) {
+                    continue;
+                }
+                flags[p] |= paint;
+                int counted = (flags[p] & STALE) == 0 ? 1 : 0;
+                queue.add(new int[] {p, counted});
+                active += counted;
+            }
+        }
+        return removeRedundant(graph, result);
+    }
+
+    /** find the best merge base of two commits: the one with the highest
+     *  generation, and the newest of those.
+     * @param graph the commit graph.
+     * @param a position of a commit.
+     * @param b position of another commit.
+     * @return position of the merge base, or -1 if there is none.*/
+    static int best(CommitGraph graph, int a, int b) {
+        ArrayList<Integer> bases = all(graph, a, b);
+        return bases.isEmpty() ? -1 : bases.get(0);
+    }
+
+    /** drop candidates that are ancestors of other candidates.
+     * @param graph the commit graph.
+     * @param candidates common ancestors, highest generation first.
+     * @return the remaining candidates, highest generation first.*/
+    private static ArrayList<Integer> removeRedundant(
+            CommitGraph graph, ArrayList<Integer> candidates) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int c : candidates) {
+            boolean redundant = false;
+            for (int kept : result) {
+                if (graph.isAncestor(c, kept)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+}
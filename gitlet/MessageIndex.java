@@ -0,0 +1,404 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.nio.file.Paths;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/** Commit messages, kept apart from the commits so that find does not
+ *  deserialize any commit.
+ *
+ *  The messages file is "GMSG" and a version int followed by the message
+ *  of every commit as an int length and UTF-8 bytes, appended as commits
+ *  are made. The message-index file is "GMIX" and a version int, the
+ *  number of commits n, the offsets of their messages in the messages
+ *  file as n longs, and then every token of the messages in sorted order
+ *  with the positions of the commits whose message contains it.
+ *  Commits are named by their positions in the CommitGraph.
+ *
+ *  A commit only appends its message to the messages file. The messages
+ *  after the first n are the log of the index: they are tokenized when
+ *  the index is read, and folded into the index file by repack, or once
+ *  they are more than the n commits in it, so that the index file is
+ *  rewritten a number of times logarithmic in the number of commits.
+ *  @author Henry Xu
+ */
+class MessageIndex {
+
+    /** the path of the messages of all commits.*/
+    static final String MESSAGES_PATH = ".gitlet/messages";
+    /** the path of the index of the messages.*/
+    static final String INDEX_PATH = ".gitlet/message-index";
+    /** magic number of messages files.*/
+    static final int MESSAGES_MAGIC = 0x474d5347;
+    /** magic number of message index files.*/
+    static final int INDEX_MAGIC = 0x474d4958;
+    /** format version of both files.*/
+    static final int VERSION = 1;
+    /** size of the header of both files.*/
+    private static final int HEADER = 8;
+
+    /** the index of the repository in the current directory.*/
+    private static MessageIndex _index;
+
+    /** number of indexed commits.*/
+    private int _count;
+    /** number of commits in the index file. the rest are in the log.*/
+    private int _indexed;
+    /** offset of the message of each commit in the messages file.*/
+    private long[] _offsets = new long[16];
+    /** key: a token, val: positions of the commits in the index file
+     *  with that token in their message, in increasing order. read on
+     *  first use.*/
+    private TreeMap<String, ArrayList<Integer>> _postings;
+    /** the same for the commits in the log.*/
+    private TreeMap<String, ArrayList<Integer>> _logPostings =
+            new TreeMap<>();
+    /** contents of the index file, kept until the tokens are read.*/
+    private byte[] _indexData;
+    /** where the tokens start in _indexData.*/
+    private int _tokensAt;
+    /** contents of the messages file, read by scans that check every
+     *  message.*/
+    private byte[] _data;
+    /** the messages file, opened on first read of a single message.*/
+    private FileChannel _channel;
+
+    /** @return the message index of the repository in the current
+     *  directory, built from the commits if it has none yet.*/
+    static MessageIndex get() {
+        if (_index == null) {
+            File messages = new File(MESSAGES_PATH);
+            File index = new File(INDEX_PATH);
+            if (messages.exists() && index.exists()) {
+                _index = read(Utils.readContents(index));
+                _index.readLog();
+            } else {
+                messages.delete();
+                _index = new MessageIndex();
+                _index._postings = new TreeMap<>();
+            }
+            _index.update();
+        }
+        return _index;
+    }
+
+    /** forget the index read so far, so that the next get reads it
+     *  again.*/
+    static void reset() {
+        if (_index != null && _index._channel != null) {
+            try {
+                _index._channel.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        _index = null;
+    }
+
+    /** @param message a commit message.
+     * @return the distinct lower case words and numbers in MESSAGE.*/
+    static HashSet<String> tokens(String message) {
+        HashSet<String> result = new HashSet<>();
+        for (String token : message.toLowerCase(Locale.ROOT)
+                .split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    /** @param data contents of a message index file.
+     * @return the index.*/
+    private static MessageIndex read(byte[] data) {
+        MessageIndex index = new MessageIndex();
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(data));
+        try {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupt message index.");
+            }
+            index._count = in.readInt();
+            index._indexed = index._count;
+            index._offsets = new long[Math.max(index._count, 16)];
+            for (int i = 0; i < index._count; i++) {
+                index._offsets[i] = in.readLong();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt message index.");
+        }
+        index._indexData = data;
+        index._tokensAt = HEADER + 4 + 8 * index._count;
+        return index;
+    }
+
+    /** index the messages in the messages file after the ones in the
+     *  index file.*/
+    private void readLog() {
+        try (RandomAccessFile in = new RandomAccessFile(MESSAGES_PATH, "r")) {
+            long start = HEADER;
+            if (_count > 0) {
+                in.seek(_offsets[_count - 1]);
+                start = _offsets[_count - 1] + 4 + in.readInt();
+            }
+            byte[] log = new byte[(int) (in.length() - start)];
+            in.seek(start);
+            in.readFully(log);
+            for (int pos = 0; pos + 4 <= log.length;) {
+                int length = PackFile.readInt(log, pos);
+                if (pos + 4 + length > log.length) {
+                    break;
+                }
+                index(new String(log, pos + 4, length, StandardCharsets.UTF_8),
+                        start + pos);
+                pos += 4 + length;
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt message index.");
+        }
+    }
+
+    /** @return the tokens of the messages in the index file, read from
+     *  it on first use.*/
+    private TreeMap<String, ArrayList<Integer>> postings() {
+        if (_postings != null) {
+            return _postings;
+        }
+        _postings = new TreeMap<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                _indexData, _tokensAt, _indexData.length - _tokensAt));
+        try {
+            for (int tokens = in.readInt(); tokens > 0; tokens--) {
+                String token = in.readUTF();
+                int n = in.readInt();
+                ArrayList<Integer> positions = new ArrayList<>(n);
+                for (int k = 0; k < n; k++) {
+                    positions.add(in.readInt());
+                }
+                _postings.put(token, positions);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt message index.");
+        }
+        _indexData = null;
+        return _postings;
+    }
+
+    /** index the commits in the commit graph that are not indexed yet,
+     *  and write the index if there were any.*/
+    void update() {
+        CommitGraph graph = CommitGraph.get();
+        if (_count >= graph.size()) {
+            return;
+        }
+        File messages = new File(MESSAGES_PATH);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            long offset = messages.length();
+            if (!messages.exists()) {
+                out.writeInt(MESSAGES_MAGIC);
+                out.writeInt(VERSION);
+                offset = HEADER;
+            }
+            for (int i = _count; i < graph.size(); i++) {
+                String message = Gitlet.getCommit(graph.sha(i)).getMessage();
+                byte[] encoded = message.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+                index(message, offset);
+                offset += 4 + encoded.length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.appendContents(messages, bytes.toByteArray());
+        _data = null;
+        if (_count - _indexed > _indexed) {
+            compact();
+        }
+    }
+
+    /** add the message of the next commit to the log in memory.
+     * @param message the message.
+     * @param offset where it is in the messages file.*/
+    private void index(String message, long offset) {
+        if (_count == _offsets.length) {
+            _offsets = Arrays.copyOf(_offsets, 2 * _count);
+        }
+        _offsets[_count] = offset;
+        for (String token : tokens(message)) {
+            ArrayList<Integer> positions = _logPostings.get(token);
+            if (positions == null) {
+                positions = new ArrayList<>();
+                _logPostings.put(token, positions);
+            }
+            positions.add(_count);
+        }
+        _count += 1;
+    }
+
+    /** @param token a token.
+     * @return positions of the commits with TOKEN in their message, in
+     *  increasing order, or null if there are none.*/
+    private ArrayList<Integer> positions(String token) {
+        ArrayList<Integer> indexed = postings().get(token);
+        ArrayList<Integer> logged = _logPostings.get(token);
+        if (indexed == null || logged == null) {
+            return indexed == null ? logged : indexed;
+        }
+        ArrayList<Integer> result = new ArrayList<>(indexed);
+        result.addAll(logged);
+        return result;
+    }
+
+    /** fold the log into the index file, if there is a log.*/
+    void compact() {
+        if (_indexed == _count && new File(INDEX_PATH).exists()) {
+            return;
+        }
+        TreeMap<String, ArrayList<Integer>> postings = postings();
+        for (Map.Entry<String, ArrayList<Integer>> entry
+                : _logPostings.entrySet()) {
+            ArrayList<Integer> positions = postings.get(entry.getKey());
+            if (positions == null) {
+                postings.put(entry.getKey(), entry.getValue());
+            } else {
+                positions.addAll(entry.getValue());
+            }
+        }
+        _logPostings.clear();
+        _indexed = _count;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_count);
+            for (int i = 0; i < _count; i++) {
+                out.writeLong(_offsets[i]);
+            }
+            out.writeInt(postings().size());
+            for (Map.Entry<String, ArrayList<Integer>> entry
+                    : _postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (int i : entry.getValue()) {
+                    out.writeInt(i);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(new File(INDEX_PATH), bytes.toByteArray());
+    }
+
+    /** @param message a commit message.
+     * @return positions of the commits with exactly that message, in
+     *  increasing order. only commits with all the tokens of MESSAGE are
+     *  read.*/
+    ArrayList<Integer> find(String message) {
+        HashSet<String> tokens = tokens(message);
+        if (tokens.isEmpty()) {
+            return scan(m -> m.equals(message));
+        }
+        ArrayList<Integer> candidates = null;
+        for (String token : tokens) {
+            ArrayList<Integer> positions = positions(token);
+            if (positions == null) {
+                return new ArrayList<>();
+            }
+            if (candidates == null || positions.size() < candidates.size()) {
+                candidates = positions;
+            }
+        }
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int i : candidates) {
+            if (message(i).equals(message)) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    /** @param prefix the start of a commit message.
+     * @return positions of the commits whose message starts with PREFIX,
+     *  in increasing order.*/
+    ArrayList<Integer> findPrefix(String prefix) {
+        return scan(m -> m.startsWith(prefix));
+    }
+
+    /** @param pattern a regular expression.
+     * @return positions of the commits whose message contains a match of
+     *  PATTERN, in increasing order.*/
+    ArrayList<Integer> findRegex(Pattern pattern) {
+        return scan(m -> pattern.matcher(m).find());
+    }
+
+    /** check all messages in one pass over the messages file.
+     * @param test which messages to keep.
+     * @return positions of the commits whose message passes TEST, in
+     *  increasing order.*/
+    private ArrayList<Integer> scan(Predicate<String> test) {
+        if (_data == null) {
+            _data = Utils.readContents(new File(MESSAGES_PATH));
+        }
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int i = 0; i < _count; i++) {
+            if (test.test(message(i))) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    /** @param i the position of a commit.
+     * @return its message, from the messages file read by a scan, or
+     *  else read on its own from where its offset says.*/
+    String message(int i) {
+        if (_data != null) {
+            int offset = (int) _offsets[i];
+            return new String(_data, offset + 4,
+                    PackFile.readInt(_data, offset), StandardCharsets.UTF_8);
+        }
+        try {
+            if (_channel == null) {
+                _channel = FileChannel.open(Paths.get(MESSAGES_PATH));
+            }
+            ByteBuffer length = read(_offsets[i], 4);
+            return new String(read(_offsets[i] + 4, length.getInt(0))
+                    .array(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @param pos where to read in the messages file.
+     * @param size the number of bytes to read.
+     * @return the SIZE bytes at POS.*/
+    private ByteBuffer read(long pos, int size) throws IOException {
+        ByteBuffer result = ByteBuffer.allocate(size);
+        while (result.hasRemaining()) {
+            if (_channel.read(result, pos + result.position()) < 0) {
+                throw Utils.error("Corrupt message index.");
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/** A raw 20-byte SHA-1 object id, held as five ints so that ids can be
+ *  compared, hashed and ordered without arrays or hexadecimal strings.
+ *  Ids order the same way as their raw bytes, unsigned.
+ *  @author Henry Xu
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** the length of an id in bytes.*/
+    static final int LENGTH = PackFile.ID_LENGTH;
+
+    /** buffers that each thread finishes its digests into.*/
+    private static final ThreadLocal<byte[]> DIGESTS =
+            ThreadLocal.withInitial(() -> new byte[LENGTH]);
+
+    /** the id in big-endian words.*/
+    private final int _w0, _w1, _w2, _w3, _w4;
+
+    /** make an id from its words.
+     * @param w0 bytes 0 to 3.
+     * @param w1 bytes 4 to 7.
+     * @param w2 bytes 8 to 11.
+     * @param w3 bytes 12 to 15.
+     * @param w4 bytes 16 to 19.*/
+    private ObjectId(int w0, int w1, int w2, int w3, int w4) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+        _w3 = w3;
+        _w4 = w4;
+    }
+
+    /** @param buf a buffer.
+     * @param pos where a raw id starts in BUF.
+     * @return the id.*/
+    static ObjectId fromRaw(byte[] buf, int pos) {
+        return new ObjectId(PackFile.readInt(buf, pos),
+                PackFile.readInt(buf, pos + 4),
+                PackFile.readInt(buf, pos + 8),
+                PackFile.readInt(buf, pos + 12),
+                PackFile.readInt(buf, pos + 16));
+    }
+
+    /** finish a SHA-1 digest, which is reset.
+     * @param md the digest.
+     * @return the id it computed.*/
+    static ObjectId digest(MessageDigest md) {
+        byte[] raw = DIGESTS.get();
+        try {
+            md.digest(raw, 0, LENGTH);
+        } catch (DigestException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return fromRaw(raw, 0);
+    }
+
+    /** @param hex a full id as hexadecimal.
+     * @return the id.*/
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != Utils.UID_LENGTH) {
+            throw Utils.error("Invalid object id %s.", hex);
+        }
+        int[] words = new int[LENGTH / 4];
+        for (int i = 0; i < Utils.UID_LENGTH; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw Utils.error("Invalid object id %s.", hex);
+            }
+            words[i / 8] = (words[i / 8] << 4) | digit;
+        }
+        return new ObjectId(words[0], words[1], words[2], words[3],
+                words[4]);
+    }
+
+    /** @param hex an id as hexadecimal, or null.
+     * @return if HEX is this id, compared without making an id of it.*/
+    boolean matches(String hex) {
+        if (hex == null || hex.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int k = 0; k < LENGTH / 4; k++) {
+            int w = 0;
+            for (int i = 8 * k; i < 8 * k + 8; i++) {
+                int digit = Character.digit(hex.charAt(i), 16);
+                if (digit < 0) {
+                    return false;
+                }
+                w = (w << 4) | digit;
+            }
+            if (w != word(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @param k index of a word.
+     * @return the Kth word.*/
+    private int word(int k) {
+        switch (k) {
+        case 0:
+            return _w0;
+        case 1:
+            return _w1;
+        case 2:
+            return _w2;
+        case 3:
+            return _w3;
+        default:
+            return _w4;
+        }
+    }
+
+    /** write the raw id into a buffer.
+     * @param buf the buffer.
+     * @param pos where to write it.*/
+    void copyRawTo(byte[] buf, int pos) {
+        for (int k = 0; k < LENGTH / 4; k++) {
+            int w = word(k);
+            buf[pos + 4 * k] = (byte) (w >>> 24);
+            buf[pos + 4 * k + 1] = (byte) (w >>> 16);
+            buf[pos + 4 * k + 2] = (byte) (w >>> 8);
+            buf[pos + 4 * k + 3] = (byte) w;
+        }
+    }
+
+    /** @return the raw id.*/
+    byte[] toRaw() {
+        byte[] result = new byte[LENGTH];
+        copyRawTo(result, 0);
+        return result;
+    }
+
+    /** @return the id as hexadecimal.*/
+    String toHex() {
+        char[] result = new char[Utils.UID_LENGTH];
+        for (int k = 0; k < LENGTH / 4; k++) {
+            Utils.toHex(word(k), result, 8 * k);
+        }
+        return new String(result);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2
+                && _w3 == other._w3 && _w4 == other._w4;
+    }
+
+    @Override
+    public int hashCode() {
+        return _w0;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        for (int k = 0; k < LENGTH / 4; k++) {
+            int cmp = Integer.compareUnsigned(word(k), other.word(k));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** A table of raw 20-byte object ids, packed into one byte array.
+ *  Ids keep the position they were added at, and a sorted permutation of
+ *  the positions allows binary search by full id or by abbreviated hex
+ *  prefix.
+ *  @author Henry Xu
+ */
+class ObjectIdTable {
+
+    /** returned when no id matches.*/
+    static final int NONE = -1;
+    /** returned when more than one id matches a prefix.*/
+    static final int AMBIGUOUS = -2;
+    /** the length of an id in bytes.*/
+    private static final int ID = PackFile.ID_LENGTH;
+
+    /** ids in the order they were added.*/
+    private byte[] _ids;
+    /** positions of the ids in ascending order of id.*/
+    private int[] _sorted;
+    /** number of ids.*/
+    private int _size;
+
+    /** make an empty table.*/
+    ObjectIdTable() {
+        _ids = new byte[16 * ID];
+        _sorted = new int[16];
+    }
+
+    /** make a table of ids read in bulk.
+     * @param ids packed ids.
+     * @param count number of ids in IDS.*/
+    ObjectIdTable(byte[] ids, int count) {
+        _ids = Arrays.copyOf(ids, Math.max(count, 16) * ID);
+        _size = count;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> compare(x, _ids, y * ID));
+        _sorted = new int[Math.max(count, 16)];
+        for (int i = 0; i < count; i++) {
+            _sorted[i] = order[i];
+        }
+    }
+
+    /** @return the number of ids.*/
+    int size() {
+        return _size;
+    }
+
+    /** add an id, which must not be in the table yet.
+     * @param id a raw id.
+     * @return its position.*/
+    int add(byte[] id) {
+        if (_size == _sorted.length) {
+            _ids = Arrays.copyOf(_ids, 2 * _size * ID);
+            _sorted = Arrays.copyOf(_sorted, 2 * _size);
+        }
+        System.arraycopy(id, 0, _ids, _size * ID, ID);
+        int at = lowerBound(id);
+        System.arraycopy(_sorted, at, _sorted, at + 1, _size - at);
+        _sorted[at] = _size;
+        _size += 1;
+        return _size - 1;
+    }
+
+    /** @param i a position.
+     * @return the raw id at I.*/
+    byte[] id(int i) {
+        return Arrays.copyOfRange(_ids, i * ID, (i + 1) * ID);
+    }
+
+    /** @param i a position.
+     * @return the id at I as hexadecimal.*/
+    String sha(int i) {
+        return Utils.toHex(id(i));
+    }
+
+    /** @param id a raw id.
+     * @return its position, or NONE.*/
+    int find(byte[] id) {
+        int at = lowerBound(id);
+        if (at < _size && compare(_sorted[at], id, 0) == 0) {
+            return _sorted[at];
+        }
+        return NONE;
+    }
+
+    /** @param sha a full id as hexadecimal, or null.
+     * @return its position, or NONE.*/
+    int find(String sha) {
+        if (sha == null || sha.length() != Utils.UID_LENGTH) {
+            return NONE;
+        }
+        return find(Utils.toBytes(sha));
+    }
+
+    /** find the id starting with an abbreviated hexadecimal id.
+     * @param prefix the abbreviation, of any length.
+     * @return the position of the only matching id, NONE or AMBIGUOUS.*/
+    int findPrefix(String prefix) {
+        int digits = prefix.length();
+        if (digits == 0 || digits > Utils.UID_LENGTH
+                || !prefix.matches("[0-9a-fA-F]+")) {
+            return NONE;
+        }
+        byte[] low = new byte[ID];
+        for (int k = 0; k < digits; k++) {
+            int nibble = Character.digit(prefix.charAt(k), 16);
+            low[k / 2] |= k % 2 == 0 ? nibble << 4 : nibble;
+        }
+        int at = lowerBound(low);
+        if (at >= _size || !matches(_sorted[at], low, digits)) {
+            return NONE;
+        }
+        if (at + 1 < _size && matches(_sorted[at + 1], low, digits)) {
+            return AMBIGUOUS;
+        }
+        return _sorted[at];
+    }
+
+    /** @param i a position.
+     * @param low the prefix, padded with zeros.
+     * @param digits number of hex digits in the prefix.
+     * @return if the id at I starts with the prefix.*/
+    private boolean matches(int i, byte[] low, int digits) {
+        for (int k = 0; k < digits; k++) {
+            if (nibble(_ids, i * ID, k) != nibble(low, 0, k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @param buf a buffer.
+     * @param pos where an id starts in BUF.
+     * @param k index of a hex digit.
+     * @return the Kth hex digit of the id.*/
+    private static int nibble(byte[] buf, int pos, int k) {
+        int b = buf[pos + k / 2] & 0xff;
+        return k % 2 == 0 ? b >> 4 : b & 0xf;
+    }
+
+    /** @param id a raw id.
+     * @return the first place in the sorted order whose id is not less
+     *  than ID.*/
+    private int lowerBound(byte[] id) {
+        int lo = 0;
+        int hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(_sorted[mid], id, 0) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** compare the id at a position with an id in a buffer.
+     * @param i a position.
+     * @param buf a buffer.
+     * @param pos where the other id starts in BUF.
+     * @return negative, zero or positive.*/
+    private int compare(int i, byte[] buf, int pos) {
+        for (int k = 0; k < ID; k++) {
+            int a = _ids[i * ID + k] & 0xff;
+            int b = buf[pos + k] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+}
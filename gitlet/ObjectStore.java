@@ -0,0 +1,737 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import static gitlet.Gitlet.*;
+
+/** The object database of blobs, trees and commits.
+ *  New objects are written loose, one file per object in BLOBS_DIR,
+ *  TREES_DIR or COMMITS_DIR. The repack command moves loose objects into
+ *  a pack under PACKS_DIR. Reads look at loose objects first and then at
+ *  every pack.
+ *
+ *  Every stored object starts with a header: the MAGIC bytes, an encoding
+ *  byte and the length of the contents as an int. Objects without the
+ *  header were written by older versions and are read as they are.
+ *
+ *  A blob may be stored as a delta against a base blob, normally the
+ *  previous version of the same file. Its header goes on with the id of
+ *  the base and the depth of the delta chain, followed by the deflated
+ *  Delta instructions. Chains are at most gitlet.deltaDepth long, and
+ *  never longer than MAX_DEPTH, as the depth is stored in a signed byte.
+ *  @author Henry Xu
+ */
+class ObjectStore {
+
+    /** blobs at least this long are added with writeBlob(File).*/
+    static final long STREAM_THRESHOLD = 16 << 20;
+    /** the path of all packs.*/
+    static final String PACKS_DIR = ".gitlet/packs/";
+    /** the path of files being written, which are moved into place once
+     *  they are complete. what a command that stopped left there is
+     *  deleted by repack.*/
+    static final String TMP_DIR = ".gitlet/tmp/";
+    /** type of a blob object.*/
+    static final byte BLOB = 1;
+    /** type of a commit object.*/
+    static final byte COMMIT = 2;
+    /** type of a tree object.*/
+    static final byte TREE = 3;
+
+    /** first bytes of every object with a header.*/
+    private static final byte[] MAGIC = {0, 'g', 'l', 't'};
+    /** encoding of an object stored as it is.*/
+    static final byte RAW = 0;
+    /** encoding of an object compressed with deflate.*/
+    static final byte DEFLATED = 1;
+    /** encoding of a blob stored as a delta against another blob.*/
+    static final byte DELTA = 2;
+    /** smallest blob that is stored as a delta.*/
+    private static final int MIN_DELTA = 64;
+    /** longest chain of deltas that can be stored.*/
+    static final int MAX_DEPTH = Byte.MAX_VALUE;
+
+    /** size of buffers used to copy objects.*/
+    private static final int BUFFER_SIZE = 8192;
+    /** if new objects are compressed.*/
+    private static boolean _compress =
+            !"false".equals(System.getProperty("gitlet.compress"));
+    /** maximum length of a chain of deltas.*/
+    private static int _maxDepth = Math.min(MAX_DEPTH,
+            Integer.getInteger("gitlet.deltaDepth", 10));
+    /** packs of this repository, loaded on first use.*/
+    private static ArrayList<PackFile> _packs;
+
+    /** save a blob unless it is already stored.
+     * @param sha the sha of the blob.
+     * @param contents the contents of the blob.*/
+    static void writeBlob(String sha, byte[] contents) {
+        writeBlob(sha, contents, null);
+    }
+
+    /** save a blob unless it is already stored, as a delta against BASE
+     *  if that is much smaller than the blob. BASE is not used if it is
+     *  too large to read into memory.
+     * @param sha the sha of the blob.
+     * @param contents the contents of the blob.
+     * @param base the sha of a stored blob, usually the previous version
+     *             of the same file, or null.*/
+    static void writeBlob(String sha, byte[] contents, String base) {
+        if (contains(BLOBS_DIR, sha)) {
+            return;
+        }
+        File f = new File(BLOBS_DIR + sha);
+        if (base == null || base.equals(sha) || contents.length < MIN_DELTA) {
+            writeLoose(f, contents);
+            return;
+        }
+        int depth = depth(base) + 1;
+        if (depth <= 0 || depth > _maxDepth) {
+            writeLoose(f, contents);
+            return;
+        }
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        try (DeflaterOutputStream z = new DeflaterOutputStream(delta)) {
+            z.write(Delta.create(readBlob(base), contents));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (delta.size() > contents.length / 2) {
+            writeLoose(f, contents);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(f.toPath())))) {
+            out.write(MAGIC);
+            out.writeByte(DELTA);
+            out.writeInt(contents.length);
+            out.write(Utils.toBytes(base));
+            out.writeByte(depth);
+            delta.writeTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** save the contents of a file as a blob unless it is already stored.
+     *  the file is hashed and stored in one pass, a chunk at a time, so
+     *  that it is never held in memory. no delta is made.
+     * @param file the file.
+     * @return the sha of the blob.*/
+    static String writeBlob(File file) {
+        File tmp = tempFile("blob-");
+        MessageDigest md = Utils.sha1Digest();
+        Deflater deflater = _compress ? new Deflater() : null;
+        try (FileChannel in = FileChannel.open(file.toPath());
+             RandomAccessFile stored = new RandomAccessFile(tmp, "rw")) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(
+                            stored.getChannel()), BUFFER_SIZE));
+            out.write(MAGIC);
+            out.writeByte(_compress ? DEFLATED : RAW);
+            out.writeInt(0);
+            DeflaterOutputStream z = null;
+            OutputStream body = out;
+            if (deflater != null) {
+                z = new DeflaterOutputStream(out, deflater);
+                body = z;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(Utils.HASH_BUFFER);
+            long length = 0;
+            for (int k = in.read(buf); k >= 0; k = in.read(buf)) {
+                md.update(buf.array(), 0, k);
+                body.write(buf.array(), 0, k);
+                length += k;
+                buf.clear();
+            }
+            if (z != null) {
+                z.finish();
+            }
+            out.flush();
+            stored.seek(MAGIC.length + 1);
+            stored.writeInt(length > Integer.MAX_VALUE ? -1 : (int) length);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        String sha = Utils.digestHex(md);
+        if (contains(BLOBS_DIR, sha)) {
+            tmp.delete();
+        } else if (!tmp.renameTo(new File(BLOBS_DIR + sha))) {
+            tmp.delete();
+            throw Utils.error("Cannot store blob %s.", sha);
+        }
+        return sha;
+    }
+
+    /** @param prefix the start of the name of the file.
+     * @return a new empty file in TMP_DIR, with a name no other writer
+     *  has.*/
+    static File tempFile(String prefix) {
+        File dir = new File(TMP_DIR);
+        dir.mkdirs();
+        try {
+            return File.createTempFile(prefix, null, dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** save a commit and the trees made with it unless it is already
+     *  stored.
+     * @param sha the sha of the commit.
+     * @param commit the commit.*/
+    static void writeCommit(String sha, Commit commit) {
+        if (!contains(COMMITS_DIR, sha)) {
+            commit.tree().save();
+            writeLoose(new File(COMMITS_DIR + sha), commit.encode());
+        }
+    }
+
+    /** save a tree unless it is already stored.
+     * @param sha the sha of the tree.
+     * @param contents the encoding of the tree.*/
+    static void writeTree(String sha, byte[] contents) {
+        if (!contains(TREES_DIR, sha)) {
+            File dir = new File(TREES_DIR);
+            if (!dir.isDirectory()) {
+                dir.mkdirs();
+            }
+            writeLoose(new File(TREES_DIR + sha), contents);
+        }
+    }
+
+    /** @param sha the sha of a tree.
+     * @return if the tree is stored.*/
+    static boolean hasTree(String sha) {
+        return contains(TREES_DIR, sha);
+    }
+
+    /** @param sha the sha of a tree.
+     * @return the encoding of the tree.*/
+    static byte[] readTree(String sha) {
+        return read(TREES_DIR, sha, TREE);
+    }
+
+    /** @return the SHAs of all stored commits, loose or packed.*/
+    static ArrayList<String> commitIds() {
+        ArrayList<String> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(COMMITS_DIR);
+        if (names != null) {
+            for (String sha : names) {
+                if (sha.length() == Utils.UID_LENGTH) {
+                    result.add(sha);
+                }
+            }
+        }
+        for (PackFile pack : packs()) {
+            for (byte[] id : pack.ids(COMMIT)) {
+                result.add(Utils.toHex(id));
+            }
+        }
+        return result;
+    }
+
+    /** @param sha the sha of a blob.
+     * @return if the blob is stored.*/
+    static boolean hasBlob(String sha) {
+        return contains(BLOBS_DIR, sha);
+    }
+
+    /** @param sha the sha of a blob.
+     * @return the contents of the blob.*/
+    static byte[] readBlob(String sha) {
+        return read(BLOBS_DIR, sha, BLOB);
+    }
+
+    /** write a blob into a file.
+     * @param sha the sha of the blob.
+     * @param file the file to write.*/
+    static void writeBlobTo(String sha, File file) {
+        byte[] contents = copyBlob(sha, file);
+        if (contents != null) {
+            Utils.writeContents(file, contents);
+        }
+    }
+
+    /** write a blob into a file if that can be done without reading it
+     *  into memory. a blob stored as it is, or by an older version, is
+     *  copied from the loose file or pack by the file system with
+     *  transferTo, and a compressed blob of at least STREAM_THRESHOLD
+     *  bytes is inflated into the file a chunk at a time.
+     * @param sha the sha of the blob.
+     * @param file the file to write.
+     * @return null if FILE was written, or else the contents of the blob
+     *  for the caller to write.*/
+    static byte[] copyBlob(String sha, File file) {
+        return copyBlob(sha, file, null);
+    }
+
+    /** copyBlob, first taking from BUDGET a permit per byte of a blob
+     *  that has to be read into memory, as its header gives them, and at
+     *  most CheckoutWriter.MAX_IN_FLIGHT. they are given back if it
+     *  cannot be read, and are otherwise the caller's to release once
+     *  the contents are written.
+     * @param sha the sha of the blob.
+     * @param file the file to write.
+     * @param budget permits for bytes held in memory, or null.
+     * @return null if FILE was written, or else the contents of the blob
+     *  for the caller to write.*/
+    static byte[] copyBlob(String sha, File file, Semaphore budget) {
+        StoredBlob blob = new StoredBlob(sha);
+        long start = blob._start;
+        long end = blob._end;
+        PackFile pack = blob._pack;
+        try (FileChannel in = FileChannel.open(blob._file.toPath())) {
+            byte[] h = readHeader(in, start, end, MAGIC.length + 5);
+            if (h == null) {
+                transfer(in, start, end, file);
+                return null;
+            }
+            byte encoding = h[MAGIC.length];
+            int length = PackFile.readInt(h, MAGIC.length + 1);
+            if (encoding == RAW) {
+                transfer(in, start + h.length, end, file);
+                return null;
+            }
+            if (encoding == DEFLATED
+                    && (length < 0 || length >= STREAM_THRESHOLD)) {
+                in.position(start + h.length);
+                Inflater inflater = new Inflater();
+                try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                    new InflaterInputStream(Channels.newInputStream(in),
+                            inflater).transferTo(out);
+                } finally {
+                    inflater.end();
+                }
+                return null;
+            }
+            int permits = length < 0 ? CheckoutWriter.MAX_IN_FLIGHT
+                    : Math.min(length, CheckoutWriter.MAX_IN_FLIGHT);
+            if (budget != null) {
+                budget.acquireUninterruptibly(permits);
+            }
+            boolean read = false;
+            try {
+                byte[] contents;
+                if (pack != null) {
+                    contents = decode(new ByteArrayInputStream(
+                            pack.read(blob._offset, BLOB)));
+                } else {
+                    in.position(0);
+                    contents = decode(Channels.newInputStream(in));
+                }
+                read = true;
+                return contents;
+            } finally {
+                if (!read && budget != null) {
+                    budget.release(permits);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** read the header of a stored object.
+     * @param in the file the object is stored in.
+     * @param start where the object starts in IN.
+     * @param end where it ends.
+     * @param size the number of bytes to read.
+     * @return the first SIZE bytes of the object, or null if it is
+     *  shorter or does not start with MAGIC, as objects stored by older
+     *  versions do not.*/
+    private static byte[] readHeader(FileChannel in, long start, long end,
+                                     int size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(size);
+        while (header.hasRemaining() && start + header.position() < end
+                && in.read(header, start + header.position()) >= 0) {
+            continue;
+        }
+        byte[] h = header.array();
+        if (header.hasRemaining()
+                || !Arrays.equals(Arrays.copyOf(h, MAGIC.length), MAGIC)) {
+            return null;
+        }
+        return h;
+    }
+
+    /** copy part of a file into another file, replacing its contents.
+     * @param in the file to copy from.
+     * @param start where the part starts in IN.
+     * @param end where it ends.
+     * @param file the file to write.*/
+    private static void transfer(FileChannel in, long start, long end,
+                                 File file) throws IOException {
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = start;
+            while (pos < end) {
+                long k = in.transferTo(pos, end - pos, out);
+                if (k <= 0) {
+                    throw Utils.error("Object is shorter than expected.");
+                }
+                pos += k;
+            }
+        }
+    }
+
+    /** @param sha the sha of a commit.
+     * @return the commit, in the binary encoding or Java serialized by an
+     *  older version.*/
+    static Commit readCommit(String sha) {
+        byte[] data = read(COMMITS_DIR, sha, COMMIT);
+        if (Commit.isEncoded(data)) {
+            return Commit.decode(data);
+        }
+        return Commit.decodeLegacy(data, sha);
+    }
+
+    /** turn compression of new objects on or off.
+     * @param compress if new objects are compressed.*/
+    static void setCompression(boolean compress) {
+        _compress = compress;
+    }
+
+    /** write an object with its header into a loose file.
+     * @param f the loose file.
+     * @param contents the contents of the object.*/
+    private static void writeLoose(File f, byte[] contents) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(f.toPath())))) {
+            out.write(MAGIC);
+            out.writeByte(_compress ? DEFLATED : RAW);
+            out.writeInt(contents.length);
+            if (_compress) {
+                Deflater deflater = new Deflater();
+                try {
+                    DeflaterOutputStream z =
+                            new DeflaterOutputStream(out, deflater);
+                    z.write(contents);
+                    z.finish();
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                out.write(contents);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** check for the header of a stored object.
+     * @param in a stream over the object as it is stored, which is left
+     *           after the magic bytes, or at its start if there are none.
+     * @return if the object has a header.*/
+    private static boolean hasHeader(BufferedInputStream in)
+        throws IOException {
+        in.mark(MAGIC.length);
+        byte[] magic = new byte[MAGIC.length];
+        int n = 0;
+        while (n < magic.length) {
+            int k = in.read(magic, n, magic.length - n);
+            if (k < 0) {
+                break;
+            }
+            n += k;
+        }
+        if (n < magic.length || !Arrays.equals(magic, MAGIC)) {
+            in.reset();
+            return false;
+        }
+        return true;
+    }
+
+    /** @param sha the sha of a stored blob.
+     * @return the length of the chain of deltas it is stored as, or -1 if
+     *  it is STREAM_THRESHOLD bytes or more, too large to read into
+     *  memory as the base of a delta. only its header is read.*/
+    private static int depth(String sha) {
+        StoredBlob blob = new StoredBlob(sha);
+        try (FileChannel in = FileChannel.open(blob._file.toPath())) {
+            byte[] h = readHeader(in, blob._start, blob._end,
+                    MAGIC.length + 5);
+            if (h == null) {
+                return 0;
+            }
+            int length = PackFile.readInt(h, MAGIC.length + 1);
+            if (length < 0 || length >= STREAM_THRESHOLD) {
+                return -1;
+            }
+            if (h[MAGIC.length] != DELTA) {
+                return 0;
+            }
+            h = readHeader(in, blob._start, blob._end,
+                    MAGIC.length + 5 + PackFile.ID_LENGTH + 1);
+            return h[h.length - 1];
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** read the contents of a stored object, inflating it and resolving
+     *  its delta if needed.
+     * @param stored a stream over the object as it is stored.
+     * @return the contents of the object.*/
+    private static byte[] decode(InputStream stored) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stored);
+        if (!hasHeader(in)) {
+            ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int k = in.read(buf); k >= 0; k = in.read(buf)) {
+                legacy.write(buf, 0, k);
+            }
+            return legacy.toByteArray();
+        }
+        DataInputStream header = new DataInputStream(in);
+        byte encoding = header.readByte();
+        int length = header.readInt();
+        if (encoding == DELTA) {
+            byte[] base = new byte[PackFile.ID_LENGTH];
+            header.readFully(base);
+            header.readByte();
+            Inflater inflater = new Inflater();
+            try {
+                return Delta.apply(readBlob(Utils.toHex(base)),
+                        new DataInputStream(
+                                new InflaterInputStream(in, inflater)),
+                        length);
+            } finally {
+                inflater.end();
+            }
+        }
+        if (length < 0) {
+            throw Utils.error("Object is too large to read into memory.");
+        }
+        byte[] contents = new byte[length];
+        if (encoding == DEFLATED) {
+            Inflater inflater = new Inflater();
+            try {
+                new DataInputStream(new InflaterInputStream(in, inflater))
+                        .readFully(contents);
+            } finally {
+                inflater.end();
+            }
+        } else if (encoding == RAW) {
+            header.readFully(contents);
+        } else {
+            throw Utils.error("Unknown object encoding %d.", encoding);
+        }
+        return contents;
+    }
+
+    /** read an object, loose or packed.
+     * @param dir the directory of loose objects of this type.
+     * @param sha the sha of the object.
+     * @param type the type of the object.
+     * @return the contents of the object.*/
+    private static byte[] read(String dir, String sha, byte type) {
+        try (InputStream in = open(dir, sha, type)) {
+            return decode(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** open an object, loose or packed.
+     * @param dir the directory of loose objects of this type.
+     * @param sha the sha of the object.
+     * @param type the type of the object.
+     * @return a stream over the object as it is stored.*/
+    private static InputStream open(String dir, String sha, byte type)
+        throws IOException {
+        File f = new File(dir + sha);
+        if (f.isFile()) {
+            return Files.newInputStream(f.toPath());
+        }
+        if (sha != null && sha.length() == Utils.UID_LENGTH) {
+            byte[] id = Utils.toBytes(sha);
+            for (PackFile pack : packs()) {
+                long offset = pack.find(id);
+                if (offset >= 0) {
+                    return new ByteArrayInputStream(pack.read(offset, type));
+                }
+            }
+        }
+        throw Utils.error("No object with id %s.", sha);
+    }
+
+    /** @param dir the directory of loose objects of this type.
+     * @param sha the sha of an object.
+     * @return if the object is stored, loose or packed.*/
+    private static boolean contains(String dir, String sha) {
+        if (new File(dir + sha).isFile()) {
+            return true;
+        }
+        byte[] id = Utils.toBytes(sha);
+        for (PackFile pack : packs()) {
+            if (pack.find(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** forget the packs read so far, so that they are listed again.*/
+    static synchronized void reset() {
+        _packs = null;
+    }
+
+    /** @return all packs of this repository. may be called by many
+     *  threads at once.*/
+    private static synchronized ArrayList<PackFile> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(PACKS_DIR);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        _packs.add(new PackFile(new File(PACKS_DIR + name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** move all loose objects into a new pack, and delete the files
+     *  that commands which stopped partway left in TMP_DIR, or among the
+     *  blobs and packs as older versions did.*/
+    static void repack() {
+        deleteTemp(TMP_DIR, "");
+        deleteTemp(BLOBS_DIR, "tmp-");
+        deleteTemp(PACKS_DIR, "tmp-");
+        TreeMap<String, Byte> types = new TreeMap<>();
+        TreeMap<String, File> files = new TreeMap<>();
+        collectLoose(BLOBS_DIR, BLOB, types, files);
+        collectLoose(TREES_DIR, TREE, types, files);
+        collectLoose(COMMITS_DIR, COMMIT, types, files);
+        if (files.isEmpty()) {
+            return;
+        }
+        ArrayList<byte[]> ids = new ArrayList<>();
+        for (String sha : files.keySet()) {
+            ids.add(Utils.toBytes(sha));
+        }
+        File dir = new File(PACKS_DIR);
+        dir.mkdirs();
+        PackFile.write(dir, ids,
+                new ArrayList<>(types.values()),
+                new ArrayList<>(files.values()));
+        _packs = null;
+        for (File f : files.values()) {
+            f.delete();
+        }
+    }
+
+    /** delete files left by writes that did not finish. the caller holds
+     *  the RepoLock, so no other write is going on.
+     * @param dir a directory.
+     * @param prefix the start of the names of the files to delete.*/
+    private static void deleteTemp(String dir, String prefix) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (name.startsWith(prefix)) {
+                new File(dir + name).delete();
+            }
+        }
+    }
+
+    /** collect the loose objects of one directory. objects too long for
+     *  a pack entry stay loose.
+     * @param dir the directory of loose objects.
+     * @param type the type of objects in DIR.
+     * @param types collects the type of each object.
+     * @param files collects the file of each object.*/
+    private static void collectLoose(String dir, byte type,
+                                     TreeMap<String, Byte> types,
+                                     TreeMap<String, File> files) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return;
+        }
+        for (String sha : names) {
+            File f = new File(dir + sha);
+            if (sha.length() == Utils.UID_LENGTH
+                    && f.length() <= Integer.MAX_VALUE) {
+                types.put(sha, type);
+                files.put(sha, f);
+            }
+        }
+    }
+
+    /** where a stored blob is: its loose file, or the part of a pack
+     *  that holds it.*/
+    private static class StoredBlob {
+        /** the loose file or pack.*/
+        private final File _file;
+        /** where the blob starts in _file.*/
+        private final long _start;
+        /** where it ends.*/
+        private final long _end;
+        /** the pack, or null if the blob is loose.*/
+        private final PackFile _pack;
+        /** the offset of its entry in _pack, or -1.*/
+        private final long _offset;
+
+        /** find a blob, loose or packed.
+         * @param sha the sha of the blob.*/
+        StoredBlob(String sha) {
+            File loose = new File(BLOBS_DIR + sha);
+            if (loose.isFile()) {
+                _file = loose;
+                _start = 0;
+                _end = loose.length();
+                _pack = null;
+                _offset = -1;
+                return;
+            }
+            byte[] id = Utils.toBytes(sha);
+            for (PackFile pack : packs()) {
+                long offset = pack.find(id);
+                if (offset >= 0) {
+                    _file = pack.file();
+                    _start = offset + 5;
+                    _end = _start + pack.length(offset, BLOB);
+                    _pack = pack;
+                    _offset = offset;
+                    return;
+                }
+            }
+            throw Utils.error("No object with id %s.", sha);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A pack of objects: an append-only .pack file holding many objects back
+ *  to back, plus a sorted .idx file mapping object ids to pack offsets.
+ *
+ *  The .pack file is "GPAK", a version int and an object count, followed
+ *  by one entry per object: a type byte, a length int and the raw bytes.
+ *  The .idx file is "GIDX", a version int, a 256-entry fanout table of
+ *  cumulative counts by first id byte, the sorted 20-byte ids, and one
+ *  long offset into the pack per id.
+ *  Objects are read through a memory mapping of the .pack file, made on
+ *  first use, unless the pack is too long to map in one piece.
+ *  @author Henry Xu
+ */
+class PackFile {
+
+    /** magic number of pack files.*/
+    static final int PACK_MAGIC = 0x4750414b;
+    /** magic number of index files.*/
+    static final int IDX_MAGIC = 0x47494458;
+    /** format version of packs and indexes.*/
+    static final int VERSION = 1;
+    /** the length of an id in bytes.*/
+    static final int ID_LENGTH = 20;
+    /** entries in the fanout table.*/
+    private static final int FANOUT = 256;
+    /** size of the index header: magic, version and fanout.*/
+    private static final int IDX_HEADER = 8 + 4 * FANOUT;
+
+    /** the .pack file.*/
+    private File _pack;
+    /** contents of the .idx file.*/
+    private byte[] _idx;
+    /** number of objects in this pack.*/
+    private int _count;
+    /** the .pack file mapped into memory, or null if it is not mapped
+     *  yet.*/
+    private MappedByteBuffer _map;
+
+    /** open the pack described by the given index file.
+     * @param idx the .idx file.*/
+    PackFile(File idx) {
+        _idx = Utils.readContents(idx);
+        if (readInt(_idx, 0) != IDX_MAGIC || readInt(_idx, 4) != VERSION) {
+            throw Utils.error("Corrupt pack index %s.", idx.getName());
+        }
+        _count = readInt(_idx, IDX_HEADER - 4);
+        String name = idx.getName();
+        _pack = new File(idx.getParentFile(),
+                name.substring(0, name.length() - ".idx".length())
+                + ".pack");
+    }
+
+    /** @return the .pack file.*/
+    File file() {
+        return _pack;
+    }
+
+    /** @return the number of objects in this pack.*/
+    int size() {
+        return _count;
+    }
+
+    /** find the offset of an object in the pack.
+     * @param id the raw 20-byte id.
+     * @return the offset, or -1 if it is not in this pack.*/
+    long find(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return readLong(_idx, IDX_HEADER + _count * ID_LENGTH
+                        + mid * 8);
+            }
+        }
+        return -1;
+    }
+
+    /** @param i position in the sorted id table.
+     * @return the raw id at I.*/
+    byte[] idAt(int i) {
+        int pos = IDX_HEADER + i * ID_LENGTH;
+        return Arrays.copyOfRange(_idx, pos, pos + ID_LENGTH);
+    }
+
+    /** @param type a type of objects.
+     * @return the raw ids of all objects of that type in this pack.*/
+    ArrayList<byte[]> ids(byte type) {
+        ArrayList<byte[]> result = new ArrayList<>();
+        try (RandomAccessFile in = new RandomAccessFile(_pack, "r")) {
+            for (int i = 0; i < _count; i++) {
+                in.seek(readLong(_idx, IDX_HEADER + _count * ID_LENGTH
+                        + i * 8));
+                if (in.readByte() == type) {
+                    result.add(idAt(i));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** read the object stored at an offset.
+     * @param offset offset returned by find.
+     * @param type the expected type of the object.
+     * @return the stored bytes.*/
+    byte[] read(long offset, byte type) {
+        ByteBuffer map = map();
+        if (map != null) {
+            map.position((int) offset);
+            if (map.get() != type) {
+                throw Utils.error("Object in %s has the wrong type.",
+                        _pack.getName());
+            }
+            byte[] data = new byte[map.getInt()];
+            map.get(data);
+            return data;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(_pack, "r")) {
+            in.seek(offset);
+            byte actual = in.readByte();
+            if (actual != type) {
+                throw Utils.error("Object in %s has the wrong type.",
+                        _pack.getName());
+            }
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return data;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @param offset offset returned by find.
+     * @param type the expected type of the object.
+     * @return the number of stored bytes of the object, which start 5
+     *  bytes after OFFSET.*/
+    int length(long offset, byte type) {
+        ByteBuffer map = map();
+        if (map != null) {
+            map.position((int) offset);
+            if (map.get() != type) {
+                throw Utils.error("Object in %s has the wrong type.",
+                        _pack.getName());
+            }
+            return map.getInt();
+        }
+        try (RandomAccessFile in = new RandomAccessFile(_pack, "r")) {
+            in.seek(offset);
+            if (in.readByte() != type) {
+                throw Utils.error("Object in %s has the wrong type.",
+                        _pack.getName());
+            }
+            return in.readInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return a view of the whole .pack file in memory with its own
+     *  position, or null if the pack is too long to map. may be called by
+     *  many threads at once.*/
+    private synchronized ByteBuffer map() {
+        if (_map == null && _pack.length() <= Integer.MAX_VALUE) {
+            try (FileChannel in = FileChannel.open(_pack.toPath())) {
+                _map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _map == null ? null : _map.duplicate();
+    }
+
+    /** write a new pack and its index into a directory. both are written
+     *  into ObjectStore.TMP_DIR first and moved into DIR when complete.
+     * @param dir the packs directory.
+     * @param ids the raw ids of the objects, sorted.
+     * @param types the type of each object.
+     * @param files the loose file holding each object.
+     * @return the name of the new pack, without extension.*/
+    static String write(File dir, List<byte[]> ids, List<Byte> types,
+                        List<File> files) {
+        int n = ids.size();
+        long[] offsets = new long[n];
+        File tmp = ObjectStore.tempFile("pack-");
+        File tmpIdx = ObjectStore.tempFile("idx-");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmp.toPath())));
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            long at = 12;
+            for (int i = 0; i < n; i++) {
+                long length = files.get(i).length();
+                offsets[i] = at;
+                out.writeByte(types.get(i));
+                out.writeInt((int) length);
+                Files.copy(files.get(i).toPath(), out);
+                at += 5 + length;
+            }
+            out.close();
+
+            byte[][] all = ids.toArray(new byte[n][]);
+            String name = "pack-" + Utils.sha1((Object[]) all);
+            File idx = new File(dir, name + ".idx");
+            out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(tmpIdx.toPath())));
+            out.writeInt(IDX_MAGIC);
+            out.writeInt(VERSION);
+            int[] fanout = new int[FANOUT];
+            for (byte[] id : ids) {
+                fanout[id[0] & 0xff] += 1;
+            }
+            int total = 0;
+            for (int i = 0; i < FANOUT; i++) {
+                total += fanout[i];
+                out.writeInt(total);
+            }
+            for (byte[] id : ids) {
+                out.write(id);
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.close();
+            Files.move(tmp.toPath(), new File(dir, name + ".pack").toPath());
+            Files.move(tmpIdx.toPath(), idx.toPath());
+            return name;
+        } catch (IOException excp) {
+            tmp.delete();
+            tmpIdx.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @param b first byte of an id.
+     * @return number of ids whose first byte is at most B.*/
+    private int fanout(int b) {
+        return readInt(_idx, 8 + 4 * b);
+    }
+
+    /** compare the id at position I with ID.
+     * @param i position in the sorted id table.
+     * @param id the raw id.
+     * @return negative, zero or positive.*/
+    private int compareId(int i, byte[] id) {
+        int pos = IDX_HEADER + i * ID_LENGTH;
+        for (int k = 0; k < ID_LENGTH; k++) {
+            int a = _idx[pos + k] & 0xff;
+            int b = id[k] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    /** @param buf a buffer.
+     * @param pos position in BUF.
+     * @return the big-endian int at POS.*/
+    static int readInt(byte[] buf, int pos) {
+        return ((buf[pos] & 0xff) << 24) | ((buf[pos + 1] & 0xff) << 16)
+                | ((buf[pos + 2] & 0xff) << 8) | (buf[pos + 3] & 0xff);
+    }
+
+    /** @param buf a buffer.
+     * @param pos position in BUF.
+     * @return the big-endian long at POS.*/
+    static long readLong(byte[] buf, int pos) {
+        return ((long) readInt(buf, pos) << 32)
+                | (readInt(buf, pos + 4) & 0xffffffffL);
+    }
+}
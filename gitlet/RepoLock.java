@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/** An exclusive lock on the repository in the current directory. A
+ *  command holds it from before it reads the repository until after it
+ *  has written it back, so commands run by Main and by a Daemon never
+ *  overlap. The lock file also counts the commands that have held it: a
+ *  daemon compares the count with the one its own last command left to
+ *  find out if another process has run a command since, so that what it
+ *  keeps in memory may be stale.
+ *  @author Henry Xu
+ */
+class RepoLock implements AutoCloseable {
+
+    /** the path of the lock file.*/
+    static final String LOCK_PATH = ".gitlet/lock";
+
+    /** the open lock file, which is locked until it is closed.*/
+    private final FileChannel _channel;
+    /** the number of commands that held the lock before this one.*/
+    private final long _count;
+
+    /** @param channel the open lock file, locked.
+     * @param count the number of commands that held it before.*/
+    private RepoLock(FileChannel channel, long count) {
+        _channel = channel;
+        _count = count;
+    }
+
+    /** wait until no other process holds the lock, and take it.
+     * @return the lock.*/
+    static RepoLock acquire() {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(LOCK_PATH),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            channel.lock();
+            ByteBuffer count = ByteBuffer.allocate(Long.BYTES);
+            while (count.hasRemaining()
+                    && channel.read(count, count.position()) > 0) {
+                continue;
+            }
+            return new RepoLock(channel,
+                    count.hasRemaining() ? 0 : count.getLong(0));
+        } catch (IOException excp) {
+            close(channel);
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** @return the number of commands that held the lock before this
+     *  one. the count is one more once this lock is closed.*/
+    long count() {
+        return _count;
+    }
+
+    /** count this command and let other processes take the lock.*/
+    @Override
+    public void close() {
+        ByteBuffer count = ByteBuffer.allocate(Long.BYTES);
+        count.putLong(0, _count + 1);
+        try {
+            while (count.hasRemaining()) {
+                _channel.write(count, count.position());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            close(_channel);
+        }
+    }
+
+    /** close a lock file, which releases its lock.
+     * @param channel the lock file.*/
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
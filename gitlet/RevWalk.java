@@ -0,0 +1,211 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/** A lazy walk over the history in a CommitGraph.
+ *  The walk starts from the included commits and goes back through both
+ *  parents of merges, or only the first with firstParent. Commits are
+ *  produced one at a time as they are asked for, newest first by commit
+ *  time (DATE) or by generation number (TOPO), so a commit always comes
+ *  before its parents in TOPO order. Commits reachable from an excluded
+ *  commit are skipped, and the walk ends as soon as only those are left;
+ *  this is exact in TOPO order, and in DATE order as long as no commit
+ *  is older than one of its parents. With paths set, only commits that
+ *  change one of those files are produced.
+ *  Commits are named by their positions in the graph.
+ *  @author Henry Xu
+ */
+class RevWalk implements Iterator<Integer> {
+
+    /** order by commit time, newest first.*/
+    static final int DATE = 0;
+    /** order by generation number, highest first.*/
+    static final int TOPO = 1;
+
+    /** already queued once.*/
+    private static final int SEEN = 1;
+    /** reachable from an excluded commit.*/
+    private static final int UNINTERESTING = 2;
+    /** in the queue now.*/
+    private static final int QUEUED = 4;
+
+    /** the commit graph.*/
+    private CommitGraph _graph;
+    /** flags of each commit.*/
+    private int[] _flags;
+    /** commits still to be visited.*/
+    private PriorityQueue<Integer> _queue;
+    /** number of commits in the queue that are not uninteresting.*/
+    private int _interesting;
+    /** if only first parents are followed.*/
+    private boolean _firstParent;
+    /** files that produced commits must change, or empty for all.*/
+    private ArrayList<String> _paths = new ArrayList<>();
+    /** the next commit to produce, or -1 if it is not found yet.*/
+    private int _next = -1;
+
+    /** make a walk that produces nothing until commits are included.
+     * @param graph the commit graph.
+     * @param order DATE or TOPO.*/
+    RevWalk(CommitGraph graph, int order) {
+        _graph = graph;
+        _flags = new int[graph.size()];
+        if (order == TOPO) {
+            _queue = new PriorityQueue<>((x, y) -> {
+                int cmp = Integer.compare(graph.generation(y),
+                        graph.generation(x));
+                if (cmp == 0) {
+                    cmp = Long.compare(graph.time(y), graph.time(x));
+                }
+                return cmp != 0 ? cmp : Integer.compare(y, x);
+            });
+        } else {
+            _queue = new PriorityQueue<>((x, y) -> {
+                int cmp = Long.compare(graph.time(y), graph.time(x));
+                if (cmp == 0) {
+                    cmp = Integer.compare(graph.generation(y),
+                            graph.generation(x));
+                }
+                return cmp != 0 ? cmp : Integer.compare(y, x);
+            });
+        }
+    }
+
+    /** @param i position of a commit to start from, or -1.
+     * @return this walk.*/
+    RevWalk include(int i) {
+        if (i >= 0) {
+            push(i, false);
+        }
+        return this;
+    }
+
+    /** @param i position of a commit whose ancestors are skipped, or -1.
+     * @return this walk.*/
+    RevWalk exclude(int i) {
+        if (i >= 0) {
+            push(i, true);
+        }
+        return this;
+    }
+
+    /** follow only the first parent of merges.
+     * @return this walk.*/
+    RevWalk firstParent() {
+        _firstParent = true;
+        return this;
+    }
+
+    /** @param paths names of files that produced commits must change.
+     * @return this walk.*/
+    RevWalk paths(Collection<String> paths) {
+        _paths.addAll(paths);
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (_next < 0) {
+            _next = advance();
+        }
+        return _next >= 0;
+    }
+
+    @Override
+    public Integer next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int i = _next;
+        _next = -1;
+        return i;
+    }
+
+    /** @return the next commit to produce, or -1 if there are no more.*/
+    private int advance() {
+        while (_interesting > 0) {
+            int c = _queue.remove();
+            _flags[c] &= ~QUEUED;
+            boolean uninteresting = (_flags[c] & UNINTERESTING) != 0;
+            if (!uninteresting) {
+                _interesting -= 1;
+            }
+            int p1 = _graph.parent1(c);
+            int p2 = _graph.parent2(c);
+            if (p1 >= 0) {
+                push(p1, uninteresting);
+            }
+            if (p2 >= 0 && (uninteresting || !_firstParent)) {
+                push(p2, uninteresting);
+            }
+            if (!uninteresting && changesPaths(c)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** queue a commit if it is new, or mark it uninteresting. a commit
+     *  that was visited before it was known to be uninteresting is queued
+     *  again so that its ancestors are marked too.
+     * @param i position of the commit.
+     * @param uninteresting if it is reachable from an excluded commit.*/
+    private void push(int i, boolean uninteresting) {
+        int flags = _flags[i];
+        if ((flags & SEEN) == 0) {
+            _flags[i] = SEEN | QUEUED | (uninteresting ? UNINTERESTING : 0);
+            _queue.add(i);
+            if (!uninteresting) {
+                _interesting += 1;
+            }
+        } else if (uninteresting && (flags & UNINTERESTING) == 0) {
+            _flags[i] |= UNINTERESTING;
+            if ((flags & QUEUED) != 0) {
+                _interesting -= 1;
+            } else {
+                _flags[i] |= QUEUED;
+                _queue.add(i);
+            }
+        }
+    }
+
+    /** @param c position of a commit.
+     * @return if no paths are set, or if the commit has a version of one
+     *  of the paths that differs from every parent followed.*/
+    private boolean changesPaths(int c) {
+        if (_paths.isEmpty()) {
+            return true;
+        }
+        Commit commit = Gitlet.getCommit(_graph.sha(c));
+        int p1 = _graph.parent1(c);
+        int p2 = _firstParent ? -1 : _graph.parent2(c);
+        if (p1 < 0) {
+            for (String path : _paths) {
+                if (commit.getFileSHA(path) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return !samePaths(commit, p1) && (p2 < 0 || !samePaths(commit, p2));
+    }
+
+    /** @param commit a commit.
+     * @param parent position of one of its parents.
+     * @return if every path has the same version in both.*/
+    private boolean samePaths(Commit commit, int parent) {
+        Commit other = Gitlet.getCommit(_graph.sha(parent));
+        for (String path : _paths) {
+            String sha = commit.getFileSHA(path);
+            String otherSHA = other.getFileSHA(path);
+            if (sha == null ? otherSHA != null : !sha.equals(otherSHA)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,29 +1,244 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import static gitlet.Gitlet.*;
 import static gitlet.Utils.*;
 
 /** the stage area of the gitlet.
+ *  Besides the staged and marked files, the stage keeps the stat data and
+ *  SHA of working files it has hashed, so that add and status only read
+ *  files that changed since; the data of files that are gone is dropped
+ *  when a command has listed the working directory. It is saved in a
+ *  binary index file: magic "GSTG", a version int, the staged files with
+ *  their raw SHAs, the marked files, and the IndexEntry of every cached
+ *  file.
  *  @author Henry Xu
  */
-public class Stage implements Serializable {
+public class Stage {
 
-    /** staged files. i.e. files to be added.*/
-    private HashMap<String, byte[]> _stagedFiles;
+    /** magic number of index files.*/
+    static final int MAGIC = 0x47535447;
+    /** format version of index files.*/
+    static final int VERSION = 1;
+    /** number of threads hashing working files, gitlet.threads or the
+     *  number of processors.*/
+    static final int THREADS = Integer.getInteger("gitlet.threads",
+            Runtime.getRuntime().availableProcessors());
+    /** fewest files hashed in parallel.*/
+    private static final int MIN_PARALLEL = 64;
+
+    /** staged files. i.e. files to be added.
+     *  key: file name, val: SHA of its blob, already saved.*/
+    private HashMap<String, String> _stagedFiles;
     /** marked files. i.e. files marked to be removed.*/
     private ArrayList<String> _markedFiles;
-    /** the head of the commit tree.*/
+    /** cached stat data. key: file name, val: its stat data and SHA.*/
+    private HashMap<String, IndexEntry> _entries;
+    /** if the cached stat data changed since the stage was read.*/
+    private boolean _entriesChanged;
+    /** the head of the commit tree. not saved with the stage.*/
     private Commit _head;
 
     /** generate an empty stage.*/
     public Stage() {
-        _stagedFiles = new HashMap<String, byte[]>();
+        _stagedFiles = new HashMap<String, String>();
         _markedFiles = new ArrayList<String>();
+        _entries = new HashMap<String, IndexEntry>();
+    }
+
+    /** make a stage of files whose blobs are stored.
+     * @param stagedFiles key: file name, val: SHA of its blob.
+     * @param markedFiles files marked to be removed.*/
+    Stage(HashMap<String, String> stagedFiles,
+          ArrayList<String> markedFiles) {
+        this();
+        _stagedFiles.putAll(stagedFiles);
+        _markedFiles.addAll(markedFiles);
+    }
+
+    /** read a stage from an index file.
+     * @param file the index file.
+     * @return the stage.*/
+    public static Stage read(File file) {
+        Stage stage = new Stage();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupt index.");
+            }
+            byte[] sha = new byte[PackFile.ID_LENGTH];
+            for (int n = in.readInt(); n > 0; n--) {
+                String fileName = in.readUTF();
+                in.readFully(sha);
+                stage._stagedFiles.put(fileName, Utils.toHex(sha));
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                stage._markedFiles.add(in.readUTF());
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                String fileName = in.readUTF();
+                stage._entries.put(fileName, IndexEntry.read(in));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return stage;
+    }
+
+    /** write this stage into an index file.
+     * @param file the index file.*/
+    public void write(File file) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(file.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_stagedFiles.size());
+            for (String fileName : _stagedFiles.keySet()) {
+                out.writeUTF(fileName);
+                out.write(Utils.toBytes(_stagedFiles.get(fileName)));
+            }
+            out.writeInt(_markedFiles.size());
+            for (String fileName : _markedFiles) {
+                out.writeUTF(fileName);
+            }
+            out.writeInt(_entries.size());
+            for (String fileName : _entries.keySet()) {
+                out.writeUTF(fileName);
+                _entries.get(fileName).write(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _entriesChanged = false;
+    }
+
+    /** @return if the cached stat data changed since the stage was read.*/
+    public boolean entriesChanged() {
+        return _entriesChanged;
+    }
+
+    /** get the id of a working file, hashing it only if its stat data
+     *  changed since it was last hashed.
+     * @param fileName the name of the file.
+     * @return the id of its contents, or null if there is no such file.*/
+    public ObjectId workingId(String fileName) {
+        File f = new File(fileName);
+        if (!f.isFile()) {
+            return null;
+        }
+        IndexEntry current = IndexEntry.stat(f);
+        IndexEntry cached = _entries.get(fileName);
+        if (cached != null && cached.isUpToDate(current)) {
+            return cached.getId();
+        }
+        ObjectId id = Utils.sha1Id(f);
+        record(fileName, current.withId(id));
+        return id;
+    }
+
+    /** get the ids of many working files. stat data is checked and stale
+     *  files are hashed by THREADS threads. the ids are compared with
+     *  the SHAs of blobs by ObjectId.matches, without hexadecimal.
+     * @param fileNames the names of the files.
+     * @return key: file name, val: the id of its contents. files that do
+     *  not exist are left out.*/
+    public HashMap<String, ObjectId> workingIds(List<String> fileNames) {
+        IndexEntry[] entries = new IndexEntry[fileNames.size()];
+        if (THREADS <= 1 || fileNames.size() < MIN_PARALLEL) {
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = check(fileNames.get(i));
+            }
+        } else {
+            ArrayList<Callable<IndexEntry>> tasks = new ArrayList<>();
+            for (String fileName : fileNames) {
+                tasks.add(() -> check(fileName));
+            }
+            ForkJoinPool pool = new ForkJoinPool(THREADS);
+            try {
+                List<Future<IndexEntry>> results = pool.invokeAll(tasks);
+                for (int i = 0; i < entries.length; i++) {
+                    entries[i] = results.get(i).get();
+                }
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        HashMap<String, ObjectId> result = new HashMap<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == null) {
+                continue;
+            }
+            String fileName = fileNames.get(i);
+            if (entries[i] != _entries.get(fileName)) {
+                record(fileName, entries[i]);
+            }
+            result.put(fileName, entries[i].getId());
+        }
+        return result;
+    }
+
+    /** check the stat data of a working file, hashing it if needed. this
+     *  only reads the stage, so many files can be checked at once.
+     * @param fileName the name of the file.
+     * @return the cached entry if it is up to date, else a new entry, or
+     *  null if there is no such file.*/
+    private IndexEntry check(String fileName) {
+        File f = new File(fileName);
+        if (!f.isFile()) {
+            return null;
+        }
+        IndexEntry current = IndexEntry.stat(f);
+        IndexEntry cached = _entries.get(fileName);
+        if (cached != null && cached.isUpToDate(current)) {
+            return cached;
+        }
+        return current.withId(Utils.sha1Id(f));
+    }
+
+    /** record the SHA of a working file that was just written.
+     * @param fileName the name of the file.
+     * @param sha the SHA of its contents.*/
+    public void record(String fileName, String sha) {
+        record(fileName, IndexEntry.stat(new File(fileName)).withSHA(sha));
+    }
+
+    /** record the stat data and SHA of a working file.
+     * @param fileName the name of the file.
+     * @param entry its stat data and SHA.*/
+    private void record(String fileName, IndexEntry entry) {
+        _entries.put(fileName, entry);
+        _entriesChanged = true;
+    }
+
+    /** drop the cached stat data of working files that are gone.
+     * @param workingFiles the working files as listed by this command.
+     *  files that are not in it but exist, because they were written
+     *  since or are ignored, are kept.*/
+    public void prune(Collection<String> workingFiles) {
+        HashSet<String> listed = new HashSet<>(workingFiles);
+        if (_entries.keySet().removeIf(fileName -> !listed.contains(fileName)
+                && !new File(fileName).isFile())) {
+            _entriesChanged = true;
+        }
     }
 
     /** clear the stage. clear staged files and marked files.*/
@@ -47,16 +262,62 @@ public class Stage implements Serializable {
             System.out.println("File does not exist.");
             return;
         }
-        byte[] current = Utils.readContents(fcurrent);
-        String currentSHA = Utils.sha1(current);
+        IndexEntry stat = IndexEntry.stat(fcurrent);
+        IndexEntry cached = _entries.get(fileName);
+        if (cached != null && cached.isUpToDate(stat)) {
+            add(fileName, cached.getSHA());
+        } else {
+            add(fileName, null);
+        }
+    }
+
+    /** execute the add command for many files, hashing them in parallel
+     *  first.
+     * @param fileNames the names of the files to be staged.*/
+    public void add(List<String> fileNames) {
+        HashMap<String, ObjectId> ids = workingIds(fileNames);
+        for (String fileName : fileNames) {
+            if (!ids.containsKey(fileName)) {
+                System.out.println("File does not exist.");
+            } else {
+                add(fileName, ids.get(fileName).toHex());
+            }
+        }
+    }
+
+    /** stage a file.
+     * @param fileName the name of the file to be staged.
+     * @param knownSHA the SHA of its contents, or null if it has to be
+     *  hashed. the file is read anyway if its blob is not stored, and
+     *  stored as it is read if it is large.*/
+    private void add(String fileName, String knownSHA) {
+        byte[] current = null;
+        String currentSHA = knownSHA;
+        if (currentSHA == null || !ObjectStore.hasBlob(currentSHA)) {
+            File fcurrent = new File(fileName);
+            IndexEntry stat = IndexEntry.stat(fcurrent);
+            if (fcurrent.length() >= ObjectStore.STREAM_THRESHOLD) {
+                currentSHA = ObjectStore.writeBlob(fcurrent);
+            } else {
+                current = Utils.readContents(fcurrent);
+                currentSHA = Utils.sha1(current);
+            }
+            record(fileName, stat.withSHA(currentSHA));
+        }
 
         String previousSHA = _head.getFileSHA(fileName);
 
         if (previousSHA == null) {
-            _stagedFiles.put(fileName, current);
+            if (current != null) {
+                saveBlob(current, currentSHA, null);
+            }
+            _stagedFiles.put(fileName, currentSHA);
         } else {
             if (!currentSHA.equals(previousSHA)) {
-                _stagedFiles.put(fileName, current);
+                if (current != null) {
+                    saveBlob(current, currentSHA, previousSHA);
+                }
+                _stagedFiles.put(fileName, currentSHA);
             } else {
                 _stagedFiles.remove(fileName);
             }
@@ -67,8 +328,9 @@ public class Stage implements Serializable {
     /** execute the commit command.
      *  make a new commit with the staged files and marked files.
      *  @param message the commit message
+     *  @param parent the sha of the head commit.
      *  @return the new commit.*/
-    public Commit commit(String message) {
+    public Commit commit(String message, String parent) {
         if (message.equals("")) {
             System.out.println("Please enter a commit message.");
             return null;
@@ -77,34 +339,34 @@ public class Stage implements Serializable {
             System.out.println("No changes added to the commit.");
             return null;
         }
-        HashMap<String, String> blobMap = new HashMap<String, String>();
-        for (String key: _head.getBlobs().keySet()) {
-            blobMap.put(key, _head.getFileSHA(key));
-        }
-        for (String key : _stagedFiles.keySet()) {
-            byte[] blob = _stagedFiles.get(key);
-            String sha = Utils.sha1(blob);
-            blobMap.put(key, sha);
-            saveBlob(blob, sha);
-        }
-        for (String key: _markedFiles) {
-            blobMap.remove(key);
-        }
-        String sha = Utils.sha1(Utils.serialize(_head));
+        Tree root = _head.tree().with(changes());
         clear();
 
-        Commit newCommit = new Commit(message, new Date(), sha, blobMap);
-        _head = newCommit;
+        Commit newCommit = new Commit(message, new Date(), parent,
+                null, null, root);
         return newCommit;
     }
 
+    /** @return the staged files and marked files as changes to the head
+     *  commit. key: file name, val: the SHA of the new version, or null
+     *  if the file is removed.*/
+    private HashMap<String, String> changes() {
+        HashMap<String, String> changes = new HashMap<>(_stagedFiles);
+        for (String key : _markedFiles) {
+            changes.put(key, null);
+        }
+        return changes;
+    }
+
     /** get the merged version commit.
      *  make a new commit with the staged files and marked files.
      *  @param message the commit message
+     *  @param parent the sha of the head commit.
      *  @param parent1 parent1.
      *  @param parent2 parent2.
      *  @return the new commit.*/
-    public Commit mergeCommit(String message, String parent1, String parent2) {
+    public Commit mergeCommit(String message, String parent,
+                              String parent1, String parent2) {
         if (message.equals("")) {
             System.out.println("Please enter a commit message.");
             return null;
@@ -113,26 +375,11 @@ public class Stage implements Serializable {
             System.out.println("No changes added to the commit.");
             return null;
         }
-        HashMap<String, String> blobMap = new HashMap<String, String>();
-        for (String key: _head.getBlobs().keySet()) {
-            blobMap.put(key, _head.getFileSHA(key));
-        }
-        for (String key : _stagedFiles.keySet()) {
-            byte[] blob = _stagedFiles.get(key);
-            String sha = Utils.sha1(blob);
-            blobMap.put(key, sha);
-            saveBlob(blob, sha);
-        }
-        for (String key: _markedFiles) {
-            blobMap.remove(key);
-        }
-        String sha = Utils.sha1(Utils.serialize(_head));
+        Tree root = _head.tree().with(changes());
         clear();
 
-        Commit newCommit = new Commit(message, new Date(), sha, blobMap);
-        newCommit.setMergedParent1(parent1);
-        newCommit.setMergedParent2(parent2);
-        _head = newCommit;
+        Commit newCommit = new Commit(message, new Date(), parent,
+                parent1, parent2, root);
         return newCommit;
     }
 
@@ -147,16 +394,17 @@ public class Stage implements Serializable {
         }
         if (_head.getFileSHA(fileName) != null) {
             _markedFiles.add(fileName);
-            Utils.restrictedDelete(fileName);
+            WorkingTree.delete(fileName);
+            _entries.remove(fileName);
         }
     }
 
     /** save the given blob.
      * @param blob the contents of this blob
-     * @param sha the sha of this blob*/
-    public void saveBlob(byte[] blob, String sha) {
-        File f = new File(BLOBS_DIR + sha);
-        Utils.writeContents(f, blob);
+     * @param sha the sha of this blob
+     * @param base the sha of the previous version of this file, or null*/
+    public void saveBlob(byte[] blob, String sha, String base) {
+        ObjectStore.writeBlob(sha, blob, base);
     }
 
     /** @return if the stage is clear.*/
@@ -164,7 +412,7 @@ public class Stage implements Serializable {
         return _markedFiles.isEmpty() && _stagedFiles.isEmpty();
     }
     /** @return staged files.*/
-    public HashMap<String, byte[]> getStagedFiles() {
+    public HashMap<String, String> getStagedFiles() {
         return _stagedFiles;
     }
 
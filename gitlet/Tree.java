@@ -0,0 +1,294 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A directory of a commit: the blobs of the files directly in it and
+ *  the trees of its subdirectories, by name. Trees are stored like other
+ *  objects under the sha of their encoding, and a commit names only its
+ *  root tree, so commits share every subtree that did not change between
+ *  them and two trees with the same sha need not be compared.
+ *
+ *  A tree is encoded as MAGIC and a version byte, the number of entries
+ *  as a varint, and then each entry in order of name: FILE or DIR, the
+ *  name as a varint length and UTF-8 bytes, and the raw id of the blob
+ *  or tree. Paths of files in a commit separate directories with '/'.
+ *  Trees cannot be changed once made.
+ *  @author Henry Xu
+ */
+class Tree {
+
+    /** first bytes of every encoded tree.*/
+    static final int MAGIC = 0x47545245;
+    /** version of the encoding.*/
+    static final byte VERSION = 1;
+    /** kind of an entry for a file.*/
+    static final byte FILE = 0;
+    /** kind of an entry for a directory.*/
+    static final byte DIR = 1;
+    /** separator of directories in paths.*/
+    static final char SEPARATOR = '/';
+
+    /** trees read by this process. trees never change, so the cache is
+     *  never invalidated.*/
+    private static final LruCache<String, Tree> CACHE = new LruCache<>(
+            Integer.getInteger("gitlet.treeCache", 1024));
+
+    /** key: file name, val: SHA of its blob.*/
+    private final TreeMap<String, String> _files;
+    /** key: directory name, val: SHA of its tree.*/
+    private final TreeMap<String, String> _dirs;
+    /** key: directory name, val: its tree, for subtrees made by this
+     *  process that may not be stored yet.*/
+    private final HashMap<String, Tree> _made;
+    /** the sha of this tree.*/
+    private final String _sha;
+
+    /** make an empty tree.*/
+    Tree() {
+        this(new TreeMap<>(), new TreeMap<>(), new HashMap<>(), null);
+    }
+
+    /** make a tree out of maps it keeps as they are.
+     * @param files key: file name, val: SHA of its blob.
+     * @param dirs key: directory name, val: SHA of its tree.
+     * @param made subtrees in DIRS that may not be stored yet.
+     * @param sha the sha of the tree, or null to compute it.*/
+    private Tree(TreeMap<String, String> files, TreeMap<String, String> dirs,
+                 HashMap<String, Tree> made, String sha) {
+        _files = files;
+        _dirs = dirs;
+        _made = made;
+        _sha = sha != null ? sha : Utils.sha1(encode());
+    }
+
+    /** @param blobs key: path of a file, val: SHA of its blob.
+     * @return the root tree of those files.*/
+    static Tree build(Map<String, String> blobs) {
+        return new Tree().with(blobs);
+    }
+
+    /** @param sha the sha of a stored tree.
+     * @return the tree.*/
+    static Tree read(String sha) {
+        Tree tree = CACHE.get(sha);
+        if (tree == null) {
+            tree = decode(ObjectStore.readTree(sha), sha);
+            CACHE.put(sha, tree);
+        }
+        return tree;
+    }
+
+    /** @return the sha of this tree.*/
+    String sha() {
+        return _sha;
+    }
+
+    /** @return if this tree has no entries.*/
+    boolean isEmpty() {
+        return _files.isEmpty() && _dirs.isEmpty();
+    }
+
+    /** make a tree with some files changed. only the subtrees on the
+     *  paths of the changes are read and made again; every other subtree
+     *  is shared with this one. a file replaces a directory of the same
+     *  name, and a directory replaces a file.
+     * @param changes key: path of a file, val: SHA of its new blob, or
+     *  null to remove it.
+     * @return the new tree.*/
+    Tree with(Map<String, String> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+        TreeMap<String, String> files = new TreeMap<>(_files);
+        TreeMap<String, String> dirs = new TreeMap<>(_dirs);
+        HashMap<String, Tree> made = new HashMap<>(_made);
+        HashMap<String, HashMap<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash < 0) {
+                if (change.getValue() == null) {
+                    files.remove(path);
+                } else {
+                    files.put(path, change.getValue());
+                    dirs.remove(path);
+                    made.remove(path);
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, slash),
+                        k -> new HashMap<>()).put(path.substring(slash + 1),
+                        change.getValue());
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> dir
+                : below.entrySet()) {
+            String name = dir.getKey();
+            Tree child = subtree(name);
+            child = (child == null ? new Tree() : child).with(dir.getValue());
+            if (child.isEmpty()) {
+                dirs.remove(name);
+                made.remove(name);
+            } else {
+                dirs.put(name, child._sha);
+                made.put(name, child);
+                files.remove(name);
+            }
+        }
+        return new Tree(files, dirs, made, null);
+    }
+
+    /** @param name the name of a directory in this tree.
+     * @return its tree, or null if there is none.*/
+    private Tree subtree(String name) {
+        Tree made = _made.get(name);
+        if (made != null) {
+            return made;
+        }
+        String sha = _dirs.get(name);
+        return sha == null ? null : read(sha);
+    }
+
+    /** @param path the path of a file.
+     * @return the SHA of its blob, or null if it is not in this tree.
+     *  only the trees on PATH are read.*/
+    String find(String path) {
+        int slash = path.indexOf(SEPARATOR);
+        if (slash < 0) {
+            return _files.get(path);
+        }
+        Tree child = subtree(path.substring(0, slash));
+        return child == null ? null : child.find(path.substring(slash + 1));
+    }
+
+    /** add every file in this tree to a map.
+     * @param prefix the path of this tree followed by SEPARATOR, or "".
+     * @param out key: path of a file, val: SHA of its blob.*/
+    void flatten(String prefix, Map<String, String> out) {
+        for (Map.Entry<String, String> file : _files.entrySet()) {
+            out.put(prefix + file.getKey(), file.getValue());
+        }
+        for (String name : _dirs.keySet()) {
+            subtree(name).flatten(prefix + name + SEPARATOR, out);
+        }
+    }
+
+    /** collect the paths of the files that differ between two trees.
+     *  subtrees with the same sha in both are skipped without being read.
+     * @param a a tree, or null for an empty one.
+     * @param b another tree, or null for an empty one.
+     * @param prefix the path of both trees followed by SEPARATOR, or "".
+     * @param out collects the paths of the files that are in only one of
+     *  the trees, or in both with different blobs.*/
+    static void diff(Tree a, Tree b, String prefix, List<String> out) {
+        if (a == null) {
+            a = new Tree();
+        }
+        if (b == null) {
+            b = new Tree();
+        }
+        if (a._sha.equals(b._sha)) {
+            return;
+        }
+        TreeSet<String> names = new TreeSet<>(a._files.keySet());
+        names.addAll(b._files.keySet());
+        for (String name : names) {
+            String sha = a._files.get(name);
+            if (sha == null || !sha.equals(b._files.get(name))) {
+                out.add(prefix + name);
+            }
+        }
+        names = new TreeSet<>(a._dirs.keySet());
+        names.addAll(b._dirs.keySet());
+        for (String name : names) {
+            String sha = a._dirs.get(name);
+            if (sha == null || !sha.equals(b._dirs.get(name))) {
+                diff(a.subtree(name), b.subtree(name),
+                        prefix + name + SEPARATOR, out);
+            }
+        }
+    }
+
+    /** store this tree and the subtrees made with it, unless they are
+     *  stored already. a stored tree has all of its subtrees stored.*/
+    void save() {
+        if (ObjectStore.hasTree(_sha)) {
+            return;
+        }
+        for (Tree child : _made.values()) {
+            child.save();
+        }
+        ObjectStore.writeTree(_sha, encode());
+    }
+
+    /** @return the encoding of this tree.*/
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            Utils.writeVarint(out, _files.size() + _dirs.size());
+            TreeMap<String, Byte> names = new TreeMap<>();
+            for (String name : _files.keySet()) {
+                names.put(name, FILE);
+            }
+            for (String name : _dirs.keySet()) {
+                if (names.put(name, DIR) != null) {
+                    throw Utils.error("Tree has a file and a directory"
+                            + " named %s.", name);
+                }
+            }
+            for (Map.Entry<String, Byte> entry : names.entrySet()) {
+                String name = entry.getKey();
+                byte kind = entry.getValue();
+                out.writeByte(kind);
+                Utils.writeString(out, name);
+                out.write(Utils.toBytes(kind == FILE ? _files.get(name)
+                        : _dirs.get(name)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** @param data the encoding of a tree.
+     * @param sha the sha of DATA, or null to compute it.
+     * @return the tree.*/
+    static Tree decode(byte[] data, String sha) {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(data));
+        TreeMap<String, String> files = new TreeMap<>();
+        TreeMap<String, String> dirs = new TreeMap<>();
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw Utils.error("Corrupt tree.");
+            }
+            for (long n = Utils.readVarint(in); n > 0; n--) {
+                byte kind = in.readByte();
+                String name = Utils.readString(in);
+                String id = Utils.readId(in);
+                if (kind == FILE) {
+                    files.put(name, id);
+                } else if (kind == DIR) {
+                    dirs.put(name, id);
+                } else {
+                    throw Utils.error("Corrupt tree.");
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree.");
+        }
+        return new Tree(files, dirs, new HashMap<>(),
+                sha != null ? sha : Utils.sha1(data));
+    }
+}
@@ -3,7 +3,13 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static gitlet.Gitlet.*;
@@ -39,6 +45,59 @@ public class UnitTest {
         Commit splitPoint = Gitlet.splitPoint(commit1, commit1);
         assertEquals(true, commit1.equals(splitPoint));
     }
+    /** test merge bases after merges, including a criss-cross merge. */
+    @Test
+    public void mergeBaseTest() {
+        CommitGraph graph = new CommitGraph();
+        int root = graph.insert(id(0), -1, -1, 0);
+        int a1 = graph.insert(id(1), root, -1, 1);
+        int b1 = graph.insert(id(2), root, -1, 2);
+        int a2 = graph.insert(id(3), a1, b1, 3);
+        int b2 = graph.insert(id(4), b1, a1, 4);
+        int a3 = graph.insert(id(5), a2, -1, 5);
+        int b3 = graph.insert(id(6), b2, -1, 6);
+        assertEquals(root, MergeBase.best(graph, a1, b1));
+        assertEquals(b1, MergeBase.best(graph, a2, b1));
+        assertEquals(2, MergeBase.all(graph, a3, b3).size());
+        assertTrue(MergeBase.all(graph, a3, b3).contains(a1));
+        assertTrue(MergeBase.all(graph, a3, b3).contains(b1));
+        assertEquals(a3, MergeBase.best(graph, a3, a3));
+    }
+
+    /** test walking history in order, with excluded commits. */
+    @Test
+    public void revWalkTest() {
+        CommitGraph graph = new CommitGraph();
+        int root = graph.insert(id(0), -1, -1, 0);
+        int a1 = graph.insert(id(1), root, -1, 1);
+        int b1 = graph.insert(id(2), root, -1, 2);
+        int a2 = graph.insert(id(3), a1, b1, 3);
+        assertEquals(Arrays.asList(a2, b1, a1, root),
+                walk(new RevWalk(graph, RevWalk.TOPO).include(a2)));
+        assertEquals(Arrays.asList(a2, a1),
+                walk(new RevWalk(graph, RevWalk.TOPO).include(a2)
+                        .exclude(b1)));
+        assertEquals(Arrays.asList(a2, a1, root),
+                walk(new RevWalk(graph, RevWalk.DATE).include(a2)
+                        .firstParent()));
+    }
+
+    /** @param walk a walk.
+     * @return everything it produces.*/
+    private static List<Integer> walk(RevWalk walk) {
+        List<Integer> result = new ArrayList<>();
+        walk.forEachRemaining(result::add);
+        return result;
+    }
+
+    /** @param n a number.
+     * @return a raw commit id made from N.*/
+    private static byte[] id(int n) {
+        byte[] result = new byte[PackFile.ID_LENGTH];
+        result[0] = (byte) n;
+        return result;
+    }
+
     /** test the equals method of the commit class. */
     @Test
     public void commitEquals() {
@@ -47,6 +106,209 @@ public class UnitTest {
         Commit commit2 = new Commit(null, null,
                 null, new HashMap<String, String>());
         assertEquals(true, commit1.equals(commit2));
+        assertEquals(commit1.hashCode(), commit2.hashCode());
+    }
+    /** test that the cache evicts the least recently used values. */
+    @Test
+    public void lruCacheTest() {
+        LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+    /** test that weights which change while cached are taken back out as
+     *  they were put. */
+    @Test
+    public void lruCacheWeightTest() {
+        final int[] grown = {0};
+        LruCache<String, String> cache = new LruCache<>(10, 5,
+            new Utils.Function<String, Integer>() {
+                @Override
+                Integer apply(String value) {
+                    return value.length() + grown[0];
+                }
+            });
+        cache.put("a", "11");
+        cache.put("b", "22");
+        assertEquals(4, cache.weight());
+        grown[0] = 10;
+        cache.put("a", "1");
+        assertNull(cache.get("b"));
+        assertEquals(11, cache.weight());
+        grown[0] = 0;
+        cache.put("c", "333");
+        assertNull(cache.get("a"));
+        assertEquals(3, cache.weight());
+        assertEquals(1, cache.size());
+    }
+    /** test that stat data recorded right after a change is not trusted. */
+    @Test
+    public void racyIndexEntryTest() {
+        long now = System.currentTimeMillis();
+        long mtime = TimeUnit.MILLISECONDS.toNanos(now);
+        IndexEntry racy = new IndexEntry(4, mtime, "key", null, now);
+        IndexEntry settled = new IndexEntry(4, mtime, "key", null, now + 5000);
+        IndexEntry current = new IndexEntry(4, mtime, "key", null, now + 6000);
+        IndexEntry changed = new IndexEntry(5, mtime, "key", null, now + 6000);
+        assertFalse(racy.isUpToDate(current));
+        assertTrue(settled.isUpToDate(current));
+        assertFalse(settled.isUpToDate(changed));
+    }
+    /** test finding ids by abbreviation. */
+    @Test
+    public void objectIdTableTest() {
+        ObjectIdTable table = new ObjectIdTable();
+        table.add(id(0x20));
+        table.add(id(0x13));
+        table.add(id(0x12));
+        assertEquals(2, table.findPrefix("12"));
+        assertEquals(0, table.findPrefix("2"));
+        assertEquals(ObjectIdTable.AMBIGUOUS, table.findPrefix("1"));
+        assertEquals(ObjectIdTable.NONE, table.findPrefix("3"));
+        assertEquals(1, table.find(table.sha(1)));
+    }
+    /** test splitting commit messages into index tokens. */
+    @Test
+    public void messageTokensTest() {
+        HashSet<String> tokens = MessageIndex.tokens("Fix bug #12: fix it!");
+        assertEquals(4, tokens.size());
+        assertTrue(tokens.contains("fix"));
+        assertTrue(tokens.contains("12"));
+        assertTrue(MessageIndex.tokens("!!!").isEmpty());
+    }
+    /** test hashing with reused digests and converting ids. */
+    @Test
+    public void sha1Test() {
+        String abc = "a9993e364706816aba3e25717850c26c9cd0d89d";
+        assertEquals(abc, Utils.sha1("abc"));
+        assertEquals(abc, Utils.sha1("a", "bc"));
+        assertEquals(abc, Utils.sha1("a".getBytes(), "bc"));
+        assertEquals(abc, Utils.toHex(Utils.toBytes(abc)));
+    }
+    /** test converting, comparing and computing raw object ids. */
+    @Test
+    public void objectIdTest() {
+        String abc = "a9993e364706816aba3e25717850c26c9cd0d89d";
+        ObjectId id = Utils.sha1Id("abc");
+        assertEquals(abc, id.toHex());
+        assertEquals(id, ObjectId.fromHex(abc));
+        assertEquals(id.hashCode(), ObjectId.fromHex(abc).hashCode());
+        assertEquals(id, ObjectId.fromRaw(Utils.toBytes(abc), 0));
+        assertArrayEquals(Utils.toBytes(abc), id.toRaw());
+        ObjectId low = ObjectId.fromHex("7" + abc.substring(1));
+        assertTrue(low.compareTo(id) < 0);
+        assertTrue(id.compareTo(low) > 0);
+        assertEquals(0, id.compareTo(ObjectId.fromHex(abc)));
+        assertTrue(id.matches(abc));
+        assertFalse(low.matches(abc));
+        assertFalse(id.matches(abc.substring(1)));
+        assertFalse(id.matches(null));
+    }
+    /** test changing, diffing and encoding trees. */
+    @Test
+    public void treeTest() {
+        HashMap<String, String> blobs = new HashMap<>();
+        blobs.put("a.txt", Utils.sha1("a"));
+        blobs.put("src/b.txt", Utils.sha1("b"));
+        blobs.put("src/lib/c.txt", Utils.sha1("c"));
+        blobs.put("doc/d.txt", Utils.sha1("d"));
+        Tree tree = Tree.build(blobs);
+        assertEquals(Utils.sha1("c"), tree.find("src/lib/c.txt"));
+        assertNull(tree.find("src/c.txt"));
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("src/lib/c.txt", Utils.sha1("c2"));
+        changes.put("doc/d.txt", null);
+        changes.put("e.txt", Utils.sha1("e"));
+        Tree changed = tree.with(changes);
+        blobs.putAll(changes);
+        blobs.remove("doc/d.txt");
+        assertEquals(Tree.build(blobs).sha(), changed.sha());
+        HashMap<String, String> flat = new HashMap<>();
+        changed.flatten("", flat);
+        assertEquals(blobs, flat);
+        ArrayList<String> differ = new ArrayList<>();
+        Tree.diff(tree, changed, "", differ);
+        assertEquals(new HashSet<>(Arrays.asList("src/lib/c.txt",
+                "doc/d.txt", "e.txt")), new HashSet<>(differ));
+        assertEquals(changed.sha(),
+                Tree.decode(changed.encode(), null).sha());
+        changes.clear();
+        changes.put("src/lib/c.txt", null);
+        blobs.remove("src/lib/c.txt");
+        assertEquals(Tree.build(blobs).sha(), changed.with(changes).sha());
+    }
+    /** test that a directory replaces a file of the same name in a tree,
+     *  and the other way around, and that the tree still decodes. */
+    @Test
+    public void treeReplaceTest() {
+        HashMap<String, String> blobs = new HashMap<>();
+        blobs.put("a", Utils.sha1("a"));
+        Tree file = Tree.build(blobs);
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("a/b", Utils.sha1("b"));
+        Tree dir = file.with(changes);
+        assertNull(dir.find("a"));
+        assertEquals(Utils.sha1("b"), dir.find("a/b"));
+        assertEquals(dir.sha(), Tree.decode(dir.encode(), null).sha());
+        changes.clear();
+        changes.put("a", Utils.sha1("a"));
+        assertEquals(file.sha(), dir.with(changes).sha());
+    }
+    /** test matching ignore patterns and normalizing working paths. */
+    @Test
+    public void ignorePatternsTest() {
+        WorkingTree walker = new WorkingTree(Arrays.asList("# comment", "",
+                "build/", "node_modules", "*.log", "/docs/*.tmp"), false);
+        assertTrue(walker.isIgnored(".gitlet", ".gitlet", true));
+        assertTrue(walker.isIgnored("src/build", "build", true));
+        assertFalse(walker.isIgnored("src/build", "build", false));
+        assertTrue(walker.isIgnored("a/node_modules", "node_modules", true));
+        assertTrue(walker.isIgnored("src/debug.log", "debug.log", false));
+        assertFalse(walker.isIgnored("src/log.txt", "log.txt", false));
+        assertTrue(walker.isIgnored("docs/a.tmp", "a.tmp", false));
+        assertFalse(walker.isIgnored("src/docs/a.tmp", "a.tmp", false));
+        assertFalse(walker.isIgnored("# comment", "# comment", false));
+        assertEquals("src/a.txt", WorkingTree.normalize("./src/x/../a.txt"));
+        assertEquals("", WorkingTree.normalize("."));
+        assertNull(WorkingTree.normalize("src/../../a.txt"));
+        assertNull(WorkingTree.normalize("/tmp/a.txt"));
+    }
+    /** test that the binary encoding of commits round trips and does not
+     *  depend on the order blobs were added in. */
+    @Test
+    public void commitEncodingTest() {
+        String a = Utils.sha1("a");
+        String b = Utils.sha1("b");
+        HashMap<String, String> blobs1 = new HashMap<>();
+        blobs1.put("x.txt", a);
+        blobs1.put("y.txt", b);
+        HashMap<String, String> blobs2 = new HashMap<>();
+        blobs2.put("y.txt", b);
+        blobs2.put("x.txt", a);
+        Commit commit1 = new Commit("m\u00e9", new Date(-5), a, null, b,
+                blobs1);
+        Commit commit2 = new Commit("m\u00e9", new Date(-5), a, null, b,
+                blobs2);
+        assertEquals(commit1.getSHA(), commit2.getSHA());
+        Commit decoded = Commit.decode(commit1.encode());
+        assertEquals(commit1.getSHA(), decoded.getSHA());
+        assertEquals("m\u00e9", decoded.getMessage());
+        assertEquals(-5, decoded.getTime().getTime());
+        assertEquals(a, decoded.getParent());
+        assertNull(decoded.getMergedParent1());
+        assertEquals(b, decoded.getMergedParent2());
+        assertEquals(blobs1, commit1.getBlobs());
+        assertArrayEquals(commit1.encode(), decoded.encode());
+        Commit empty = Commit.decode(new Commit(null, null, null,
+                new HashMap<String, String>()).encode());
+        assertNull(empty.getMessage());
+        assertNull(empty.getTime());
     }
 
 }
@@ -1,7 +1,10 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
@@ -9,13 +12,16 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -29,28 +35,105 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** The size of the chunks in which files are hashed. */
+    static final int HASH_BUFFER = 1 << 16;
+
+    /** The digits of hexadecimal numerals. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The SHA-1 digest of each thread, made once and reused. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+
+    /** The buffer each thread finishes its digests into. */
+    private static final ThreadLocal<byte[]> DIGEST_BUFFER =
+        ThreadLocal.withInitial(() -> new byte[UID_LENGTH / 2]);
+
+    /** The buffer each thread hashes files through. */
+    private static final ThreadLocal<ByteBuffer> FILE_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocate(HASH_BUFFER));
+
+    /** Returns the SHA-1 digest of the current thread, reset. Digests
+     *  are not made again for every hash. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return md;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        return digestHex(digest(vals));
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, which may
+     *  be any mixture of byte arrays and Strings, as an ObjectId. */
+    static ObjectId sha1Id(Object... vals) {
+        return ObjectId.digest(digest(vals));
+    }
+
+    /** Returns the digest of the current thread, updated with VALS. */
+    private static MessageDigest digest(Object... vals) {
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return md;
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which are read
+     *  in chunks of HASH_BUFFER bytes rather than all at once. */
+    static String sha1(File file) {
+        return digestHex(digest(file));
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE as an ObjectId. */
+    static ObjectId sha1Id(File file) {
+        return ObjectId.digest(digest(file));
+    }
+
+    /** Returns the digest of the current thread, updated with the
+     *  contents of FILE. */
+    private static MessageDigest digest(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            MessageDigest md = sha1Digest();
+            ByteBuffer buf = FILE_BUFFER.get();
+            buf.clear();
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            return md;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Finishes the digest MD, which is reset, and returns the hash as
+     *  a hexadecimal numeral. */
+    static String digestHex(MessageDigest md) {
+        byte[] raw = DIGEST_BUFFER.get();
+        try {
+            md.digest(raw, 0, raw.length);
+        } catch (DigestException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
+        return toHex(raw);
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -59,6 +142,35 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the hexadecimal numeral of the raw bytes BYTES. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Writes the 8 hexadecimal digits of WORD into OUT from POS on. */
+    static void toHex(int word, char[] out, int pos) {
+        for (int k = 7; k >= 0; k -= 1) {
+            out[pos + k] = HEX_DIGITS[word & 0xf];
+            word >>>= 4;
+        }
+    }
+
+    /** Returns the raw bytes of the hexadecimal numeral HEX, which must
+     *  have an even number of digits. */
+    static byte[] toBytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) (Character.digit(hex.charAt(2 * i), 16) << 4
+                                | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -132,6 +244,28 @@ class Utils {
         }
     }
 
+    /** Append the result of concatenating the bytes in CONTENTS to FILE,
+     *  creating it as needed.  Each object in CONTENTS may be either a
+     *  String or a byte array.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static void appendContents(File file, Object... contents) {
+        try {
+            BufferedOutputStream str =
+                new BufferedOutputStream(Files.newOutputStream(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            for (Object obj : contents) {
+                if (obj instanceof byte[]) {
+                    str.write((byte[]) obj);
+                } else {
+                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            str.close();
+        } catch (IOException | ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -148,6 +282,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T read from the serialized bytes BYTES,
+     *  casting it to EXPECTEDCLASS.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -218,6 +369,54 @@ class Utils {
 
 
 
+    /* COMPACT ENCODINGS */
+
+    /** Writes VALUE, taken as unsigned, to OUT in 7-bit groups, least
+     *  significant first, with the high bit set on all but the last. */
+    static void writeVarint(DataOutputStream out, long value)
+        throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /** Returns the next varint read from IN. */
+    static long readVarint(DataInputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("varint is too long");
+    }
+
+    /** Writes S to OUT as a varint length and UTF-8 bytes. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, encoded.length);
+        out.write(encoded);
+    }
+
+    /** Returns the next string written by writeString read from IN. */
+    static String readString(DataInputStream in) throws IOException {
+        byte[] encoded = new byte[(int) readVarint(in)];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the next raw id read from IN, as hexadecimal. */
+    static String readId(DataInputStream in) throws IOException {
+        byte[] id = new byte[PackFile.ID_LENGTH];
+        in.readFully(id);
+        return toHex(id);
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
@@ -0,0 +1,333 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/** The files of the working directory, found by walking it with
+ *  Files.walkFileTree. Paths are relative to the working directory and
+ *  separate directories with '/', like paths in trees.
+ *
+ *  The .gitlet directory is never walked, and neither is anything that
+ *  matches a pattern in .gitletignore, so an ignored directory is skipped
+ *  without reading what is in it. Each line of .gitletignore is a glob;
+ *  blank lines and lines starting with '#' are skipped. A pattern ending
+ *  in '/' only matches directories. A pattern with another '/' matches
+ *  whole paths, and a leading '/' is dropped; any other pattern matches
+ *  names at every depth. Patterns without glob characters are looked up
+ *  in a set instead of being matched one by one.
+ *
+ *  With Stage.THREADS above one, the directories SPLIT_DEPTH or fewer
+ *  levels down are each walked as their own task on a ForkJoinPool.
+ *  @author Henry Xu
+ */
+class WorkingTree {
+
+    /** the name of the file of ignore patterns.*/
+    static final String IGNORE_FILE = ".gitletignore";
+    /** deepest directories that are walked as separate tasks.*/
+    private static final int SPLIT_DEPTH = 2;
+    /** characters that make a pattern a glob.*/
+    private static final String GLOB_CHARS = "*?[{\\";
+
+    /** names of files and directories that are ignored.*/
+    private final HashSet<String> _names = new HashSet<>();
+    /** names of directories that are ignored.*/
+    private final HashSet<String> _dirNames = new HashSet<>();
+    /** globs on names of files and directories that are ignored.*/
+    private final ArrayList<PathMatcher> _nameGlobs = new ArrayList<>();
+    /** globs on names of directories that are ignored.*/
+    private final ArrayList<PathMatcher> _dirNameGlobs = new ArrayList<>();
+    /** globs on paths of files and directories that are ignored.*/
+    private final ArrayList<PathMatcher> _pathGlobs = new ArrayList<>();
+    /** globs on paths of directories that are ignored.*/
+    private final ArrayList<PathMatcher> _dirPathGlobs = new ArrayList<>();
+    /** if subtrees are walked in parallel.*/
+    private final boolean _parallel;
+
+    /** make a walker with the patterns in .gitletignore, if there is one.
+     * @param parallel if subtrees are walked in parallel.*/
+    WorkingTree(boolean parallel) {
+        this(readIgnoreFile(), parallel);
+    }
+
+    /** make a walker.
+     * @param patterns lines of ignore patterns.
+     * @param parallel if subtrees are walked in parallel.*/
+    WorkingTree(List<String> patterns, boolean parallel) {
+        _parallel = parallel;
+        _names.add(".gitlet");
+        for (String line : patterns) {
+            addPattern(line.trim());
+        }
+    }
+
+    /** @return the plain files in the working directory that are not
+     *  ignored, in order of path.*/
+    static List<String> list() {
+        return new WorkingTree(Stage.THREADS > 1).walk("");
+    }
+
+    /** @param dir path of a directory in the working directory.
+     * @return the plain files in it that are not ignored, in order of
+     *  path. DIR itself is walked even if it is ignored.*/
+    static List<String> list(String dir) {
+        return new WorkingTree(Stage.THREADS > 1).walk(normalize(dir));
+    }
+
+    /** @return the lines of .gitletignore, or none if there is none.*/
+    private static List<String> readIgnoreFile() {
+        File f = new File(IGNORE_FILE);
+        if (!f.isFile()) {
+            return Collections.emptyList();
+        }
+        return Utils.readContentsAsString(f).lines()
+                .collect(Collectors.toList());
+    }
+
+    /** add an ignore pattern.
+     * @param pattern a line of .gitletignore, trimmed.*/
+    private void addPattern(String pattern) {
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        boolean dirOnly = pattern.endsWith("/");
+        if (dirOnly) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        boolean anchored = pattern.indexOf('/') >= 0;
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        boolean glob = false;
+        for (int i = 0; i < pattern.length() && !glob; i++) {
+            glob = GLOB_CHARS.indexOf(pattern.charAt(i)) >= 0;
+        }
+        if (anchored) {
+            PathMatcher matcher =
+                    FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            (dirOnly ? _dirPathGlobs : _pathGlobs).add(matcher);
+        } else if (glob) {
+            PathMatcher matcher =
+                    FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            (dirOnly ? _dirNameGlobs : _nameGlobs).add(matcher);
+        } else {
+            (dirOnly ? _dirNames : _names).add(pattern);
+        }
+    }
+
+    /** @param path the path of a file or directory.
+     * @param name its name.
+     * @param dir if it is a directory.
+     * @return if it is ignored.*/
+    boolean isIgnored(String path, String name, boolean dir) {
+        if (_names.contains(name) || dir && _dirNames.contains(name)) {
+            return true;
+        }
+        if (!_nameGlobs.isEmpty() || dir && !_dirNameGlobs.isEmpty()) {
+            Path namePath = Paths.get(name);
+            if (matches(_nameGlobs, namePath)
+                    || dir && matches(_dirNameGlobs, namePath)) {
+                return true;
+            }
+        }
+        if (!_pathGlobs.isEmpty() || dir && !_dirPathGlobs.isEmpty()) {
+            Path fullPath = Paths.get(path);
+            return matches(_pathGlobs, fullPath)
+                    || dir && matches(_dirPathGlobs, fullPath);
+        }
+        return false;
+    }
+
+    /** @param matchers some globs.
+     * @param path a path.
+     * @return if one of MATCHERS matches PATH.*/
+    private static boolean matches(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @param dir path of a directory, or "" for the working directory.
+     * @return the plain files under it that are not ignored, in order of
+     *  path.*/
+    List<String> walk(String dir) {
+        Walk root = new Walk(dir.isEmpty() ? "" : dir + Tree.SEPARATOR,
+                dir.isEmpty() ? 0 : dir.split("/").length);
+        List<String> result;
+        if (_parallel) {
+            ForkJoinPool pool = new ForkJoinPool(Stage.THREADS);
+            try {
+                result = pool.invoke(root);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            result = root.compute();
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** @param path a path given by the user.
+     * @return the same path relative to the working directory, with '/'
+     *  between directories and no "." or ".." in it, "" for the working
+     *  directory itself, or null if PATH is absolute or outside of it.*/
+    static String normalize(String path) {
+        Path normal = Paths.get(path).normalize();
+        if (normal.isAbsolute() || normal.startsWith("..")) {
+            return null;
+        }
+        String result = normal.toString();
+        if (File.separatorChar != Tree.SEPARATOR) {
+            result = result.replace(File.separatorChar, Tree.SEPARATOR);
+        }
+        return result;
+    }
+
+    /** @param path the path of a file in the working directory.
+     * @return the file, after making the directories it is in and
+     *  deleting an empty directory in its place.*/
+    static File file(String path) {
+        File f = new File(path);
+        if (f.isDirectory()) {
+            f.delete();
+        }
+        File parent = f.getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            parent.mkdirs();
+        }
+        return f;
+    }
+
+    /** delete a file in the working directory, if it exists, and then
+     *  each directory it was in that is left empty. refuses files that
+     *  are not under a directory with .gitlet in it.
+     * @param path the path of the file, relative to that directory.
+     * @return if the file was deleted.*/
+    static boolean delete(String path) {
+        String normal = normalize(path);
+        if (!new File(Gitlet.GITLET_DIR).isDirectory() || normal == null
+                || normal.isEmpty()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        File f = new File(normal);
+        if (f.isDirectory() || !f.delete()) {
+            return false;
+        }
+        for (File dir = f.getParentFile(); dir != null && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+        return true;
+    }
+
+    /** the walk of one directory. subdirectories up to SPLIT_DEPTH are
+     *  forked as walks of their own when walking in parallel.*/
+    private class Walk extends RecursiveTask<List<String>> {
+
+        /** walks are never serialized, but RecursiveTask is
+         *  Serializable.*/
+        private static final long serialVersionUID = 1L;
+        /** the path of the directory followed by '/', or "".*/
+        private final String _prefix;
+        /** the number of directories in _prefix.*/
+        private final int _depth;
+
+        /** @param prefix the path of the directory followed by '/', or "".
+         * @param depth the number of directories in PREFIX.*/
+        Walk(String prefix, int depth) {
+            _prefix = prefix;
+            _depth = depth;
+        }
+
+        @Override
+        protected List<String> compute() {
+            ArrayList<String> files = new ArrayList<>();
+            ArrayList<Walk> forked = new ArrayList<>();
+            ArrayDeque<String> prefixes = new ArrayDeque<>();
+            Path start = Paths.get(_prefix.isEmpty() ? "." : _prefix);
+            try {
+                Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir,
+                            BasicFileAttributes attrs) {
+                        if (prefixes.isEmpty()) {
+                            prefixes.push(_prefix);
+                            return FileVisitResult.CONTINUE;
+                        }
+                        String name = dir.getFileName().toString();
+                        String path = prefixes.peek() + name;
+                        if (isIgnored(path, name, true)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        int depth = _depth + prefixes.size();
+                        if (_parallel && depth <= SPLIT_DEPTH) {
+                            Walk child = new Walk(path + Tree.SEPARATOR,
+                                    depth);
+                            child.fork();
+                            forked.add(child);
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        prefixes.push(path + Tree.SEPARATOR);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file,
+                            BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() || attrs.isSymbolicLink()
+                                && Files.isRegularFile(file)) {
+                            String name = file.getFileName().toString();
+                            String path = prefixes.peek() + name;
+                            if (!isIgnored(path, name, false)) {
+                                files.add(path);
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file,
+                            IOException excp) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir,
+                            IOException excp) {
+                        prefixes.pop();
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            for (Walk child : forked) {
+                files.addAll(child.join());
+            }
+            return files;
+        }
+    }
+}
@@ -1,11 +1,13 @@
 import sys, re
 from subprocess import \
-     check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
+     check_output, Popen, PIPE, STDOUT, DEVNULL, CalledProcessError, \
+     TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove
+from os import chdir, environ, getcwd, makedirs, mkdir, remove
 from shutil import copyfile, rmtree
 from math import log
+from time import sleep
 
 SHORT_USAGE = """\
 Usage: python3 tester.py OPTIONS TEST.in ...
@@ -22,6 +24,8 @@ Usage: python3 tester.py OPTIONS TEST.in ...
        --tolerance=N  Set the maximum allowed edit distance between program
                       output and expected output to N (default 3).
        --verbose      Print extra information about execution.
+       --client       Run commands with gitlet.Client, against a gitlet
+                      daemon started in each repository once it exists.
 """
 
 USAGE = SHORT_USAGE + """\
@@ -46,7 +50,8 @@ The instructions each have one of the following forms:
    T N    Set the timeout for gitlet commands in the rest of this test to N
           seconds.
    + NAME F
-          Copy the contents of src/F into a file named NAME.
+          Copy the contents of src/F into a file named NAME, making the
+          directories NAME is in if necessary.
    - NAME
           Delete the file named NAME.
    > COMMAND OPERANDS
@@ -61,6 +66,13 @@ The instructions each have one of the following forms:
           Python regular expressions and matched accordingly. The directory
           or JAR file containing the gitlet.Main program is assumed to be
           in directory DIR specifed by --progdir (default is ..).
+          With --client, the command is sent by gitlet.Client to a
+          daemon instead.
+   M COMMAND OPERANDS
+   LINE1
+   ...
+   <<<
+          Like >, but always run gitlet.Main, even with --client.
    = NAME F
           Check that the file named NAME is identical to src/F, and report an
           error if not.
@@ -85,6 +97,8 @@ When finished, reports number of tests passed and failed, and the number of
 faulty TEST.in files."""
 
 GITLET_COMMAND = "java gitlet.Main"
+CLIENT_COMMAND = "java gitlet.Client"
+DAEMON_COMMAND = "java gitlet.Main daemon"
 TIMEOUT = 10
 
 def Usage():
@@ -140,16 +154,34 @@ def doDelete(name, dir):
 def doCopy(dest, src, dir):
     try:
         doDelete(dest, dir)
+        makedirs(dirname(join(dir, dest)), exist_ok=True)
         copyfile(join(src_dir, src), join(dir, dest))
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
 
-def doExecute(cmnd, dir, timeout):
+def startDaemon(dir, daemons):
+    if dir in daemons or not exists(join(dir, ".gitlet", "HEAD")):
+        return
+    daemons[dir] = Popen(DAEMON_COMMAND, shell=True, cwd=dir, stdin=DEVNULL,
+                         stdout=DEVNULL, stderr=DEVNULL)
+    for n in range(100):
+        if exists(join(dir, ".gitlet", "daemon.sock")):
+            return
+        sleep(0.1)
+    raise ValueError("gitlet daemon did not start in {}".format(dir))
+
+def stopDaemons(daemons):
+    for proc in daemons.values():
+        proc.kill()
+        proc.wait()
+    daemons.clear()
+
+def doExecute(cmnd, dir, timeout, program):
     here = getcwd()
     out = ""
     try:
         chdir(dir)
-        full_cmnd = "{} {}".format(GITLET_COMMAND, cmnd)
+        full_cmnd = "{} {}".format(program, cmnd)
         out = check_output(full_cmnd, shell=True, universal_newlines=True,
                            stdin=DEVNULL, stderr=STDOUT, timeout=timeout)
         return "OK", out
@@ -243,6 +275,7 @@ def doTest(test):
         print("Testing directory: {}".format(tmpdir))
     timeout = TIMEOUT
     defns = {}
+    daemons = {}
 
     def do_substs(L):
         c = 0
@@ -300,8 +333,12 @@ def doTest(test):
                 doCopy(Group(1), Group(2), cdir)
             elif Match(r'-\s*(\S+)', line):
                 doDelete(Group(1), cdir)
-            elif Match(r'>\s*(.*)', line):
-                cmnd = Group(1)
+            elif Match(r'([>M])\s*(.*)', line):
+                program = GITLET_COMMAND
+                if client and Group(1) == '>':
+                    startDaemon(cdir, daemons)
+                    program = CLIENT_COMMAND
+                cmnd = Group(2)
                 expected = []
                 while True:
                     line_num, L = next(inp, (line_num, ''))
@@ -313,7 +350,7 @@ def doTest(test):
                         is_regexp = Group(1)
                         break
                     expected.append(do_substs(L))
-                msg, out = doExecute(cmnd, cdir, timeout)
+                msg, out = doExecute(cmnd, cdir, timeout, program)
                 if verbose:
                     if out:
                         print(re.sub(r'(?m)^', '- ', chop_nl(out)))
@@ -347,6 +384,7 @@ def doTest(test):
             else:
                 raise ValueError("bad test line at {}".format(line_num))
     finally:
+        stopDaemons(daemons)
         if not keep:
             cleanTempDir(tmpdir)
 
@@ -355,6 +393,7 @@ if __name__ == "__main__":
     keep = False
     prog_dir = None
     verbose = False
+    client = False
     src_dir = 'src'
     output_tolerance = 3
 
@@ -362,7 +401,7 @@ if __name__ == "__main__":
         opts, files = \
             getopt(sys.argv[1:], '',
                    ['show=', 'keep', 'progdir=', 'verbose', 'src=',
-                    'tolerance='])
+                    'tolerance=', 'client'])
         for opt, val in opts:
             if opt == '--show':
                 show = int(val)
@@ -376,6 +415,8 @@ if __name__ == "__main__":
                 verbose = True
             elif opt == "--tolerance":
                 output_tolerance = int(val)
+            elif opt == "--client":
+                client = True
         if prog_dir is None:
             prog_dir = dirname(abspath(getcwd()))
         else:
@@ -392,6 +433,8 @@ if __name__ == "__main__":
     else:
         environ['CLASSPATH'] = "{}:{}".format(prog_dir, environ['CLASSPATH'])
         GITLET_COMMAND = 'exec ' + GITLET_COMMAND
+        CLIENT_COMMAND = 'exec ' + CLIENT_COMMAND
+        DAEMON_COMMAND = 'exec ' + DAEMON_COMMAND
 
     num_tests = len(files)
     errs = 0